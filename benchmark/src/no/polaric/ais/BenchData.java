@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import dk.dma.ais.message.*;
+import dk.dma.ais.packet.AisPacket;
+import dk.dma.ais.sentence.Vdm;
+
+
+/**
+ * Generate NMEA test data for benchmarks. Messages are encoded with AisLib so
+ * that checksums and fragmentation are correct. Positions are spread along the
+ * Norwegian coast.
+ */
+
+public class BenchData
+{
+    public static final long FIRST_MMSI = 257000000;
+    private static final String[] SHIPNAMES = {"KONG HARALD", "NORDLYS", "POLARLYS", "RICHARD WITH", "VESTERALEN"};
+
+    private final Random _rnd;
+    private int _seq = 0;
+
+
+    public BenchData(long seed)
+       { _rnd = new Random(seed); }
+
+
+
+    private AisPosition _pos() {
+        AisPosition p = new AisPosition();
+        p.setLatitude((long) ((58 + _rnd.nextDouble() * 13) * 600000));
+        p.setLongitude((long) ((5 + _rnd.nextDouble() * 25) * 600000));
+        return p;
+    }
+
+
+
+    /**
+     * Encode a message of the given type for a vessel.
+     */
+    public AisMessage message(int type, long mmsi) {
+        AisMessage msg;
+        switch (type) {
+            case 1: case 2: case 3:
+                AisPositionMessage m1 = (type == 1 ? new AisMessage1() : type == 2 ? new AisMessage2() : new AisMessage3());
+                m1.setPos(_pos());
+                m1.setSog(_rnd.nextInt(300));
+                m1.setCog(_rnd.nextInt(3600));
+                m1.setTrueHeading(_rnd.nextInt(360));
+                m1.setUtcSec(_rnd.nextInt(60));
+                m1.setNavStatus(_rnd.nextInt(9));
+                msg = m1;
+                break;
+            case 5:
+                AisMessage5 m5 = new AisMessage5();
+                m5.setName(SHIPNAMES[_rnd.nextInt(SHIPNAMES.length)]);
+                m5.setCallsign("LA" + (char) ('A' + _rnd.nextInt(26)) + (char) ('A' + _rnd.nextInt(26)));
+                m5.setShipType(30 + _rnd.nextInt(60));
+                m5.setDest("TRONDHEIM");
+                msg = m5;
+                break;
+            case 18:
+                AisMessage18 m18 = new AisMessage18();
+                m18.setPos(_pos());
+                m18.setSog(_rnd.nextInt(300));
+                m18.setCog(_rnd.nextInt(3600));
+                m18.setTrueHeading(_rnd.nextInt(360));
+                m18.setUtcSec(_rnd.nextInt(60));
+                msg = m18;
+                break;
+            case 19:
+                AisMessage19 m19 = new AisMessage19();
+                m19.setPos(_pos());
+                m19.setSog(_rnd.nextInt(300));
+                m19.setCog(_rnd.nextInt(3600));
+                m19.setTrueHeading(_rnd.nextInt(360));
+                m19.setUtcSec(_rnd.nextInt(60));
+                m19.setName(SHIPNAMES[_rnd.nextInt(SHIPNAMES.length)]);
+                m19.setShipType(36 + _rnd.nextInt(2));
+                msg = m19;
+                break;
+            case 24:
+                AisMessage24 m24 = new AisMessage24();
+                m24.setPartNumber(1);
+                m24.setCallsign("LM" + (char) ('A' + _rnd.nextInt(26)) + (char) ('A' + _rnd.nextInt(26)));
+                m24.setShipType(36 + _rnd.nextInt(2));
+                m24.setVendorId("POLARI");
+                msg = m24;
+                break;
+            case 27:
+                AisMessage27 m27 = new AisMessage27();
+                AisPosition p = _pos();
+                p.set1817();
+                p.setLatitude(p.getLatitude() / 1000);
+                p.setLongitude(p.getLongitude() / 1000);
+                m27.setPos(p);
+                m27.setSog(_rnd.nextInt(60));
+                m27.setCog(_rnd.nextInt(360));
+                msg = m27;
+                break;
+            case 4:
+                AisMessage4 m4 = new AisMessage4();
+                m4.setPos(_pos());
+                m4.setUtcYear(2026);
+                m4.setUtcMonth(1 + _rnd.nextInt(12));
+                m4.setUtcDay(1 + _rnd.nextInt(28));
+                m4.setUtcHour(_rnd.nextInt(24));
+                m4.setUtcMinute(_rnd.nextInt(60));
+                m4.setUtcSecond(_rnd.nextInt(60));
+                msg = m4;
+                break;
+            case 9:
+                AisMessage9 m9 = new AisMessage9();
+                m9.setPos(_pos());
+                m9.setAltitude(100 + _rnd.nextInt(1000));
+                m9.setSog(_rnd.nextInt(200));
+                m9.setCog(_rnd.nextInt(3600));
+                msg = m9;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported message type: " + type);
+        }
+        msg.setUserId((int) mmsi);
+        return msg;
+    }
+
+
+
+    /**
+     * Return the NMEA sentences of a message, separated by CRLF.
+     */
+    public String nmea(int type, long mmsi) {
+        try {
+            String[] lines = Vdm.createSentences(message(type, mmsi), _seq);
+            _seq = (_seq + 1) % 10;
+            return String.join("\r\n", lines);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Cannot encode AIS message", e);
+        }
+    }
+
+
+
+    /**
+     * Return packets of the given type for n different vessels.
+     */
+    public AisPacket[] packets(int type, int n) {
+        AisPacket[] res = new AisPacket[n];
+        for (int i = 0; i < n; i++)
+            res[i] = AisPacket.from(nmea(type, FIRST_MMSI + i));
+        return res;
+    }
+
+
+
+    /**
+     * Return a mix of NMEA strings with the given share (percent) of messages 
+     * that the plugin does not use: Base station reports (4) and SAR aircraft (9). 
+     * Other messages are as in feed(). 
+     */
+    public String[] feed(int n, int vessels, int unused) {
+        String[] res = feed(n, vessels);
+        for (int i = 0; i < n; i++)
+            if (_rnd.nextInt(100) < unused)
+                res[i] = nmea(_rnd.nextBoolean() ? 4 : 9, FIRST_MMSI + _rnd.nextInt(vessels));
+        return res;
+    }
+
+
+
+    /**
+     * Return a mix of NMEA strings resembling a coastal feed: Mostly position
+     * reports from class A and B, some static data and a few long range reports.
+     */
+    public String[] feed(int n, int vessels) {
+        String[] res = new String[n];
+        for (int i = 0; i < n; i++) {
+            int r = _rnd.nextInt(100);
+            int type = (r < 55 ? 1 : r < 60 ? 3 : r < 80 ? 18 : r < 88 ? 5 : r < 94 ? 24 : r < 97 ? 19 : 27);
+            res[i] = nmea(type, FIRST_MMSI + _rnd.nextInt(vessels));
+        }
+        return res;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import no.polaric.aprsd.point.*;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Time of a delta stream tick with a share of the vessels moving between 
+ * ticks, with vessels as objects or in the columnar store. The average 
+ * frame size and the size of a key frame (all vessels) are printed at the end. 
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeltaStreamBenchmark
+{
+    @Param({"objects", "columnar"})
+    public String store;
+
+    @Param({"20000"})
+    public int vessels;
+    
+    /* Percent of the vessels that move between ticks */
+    @Param({"10", "100"})
+    public int moving;
+
+    private StubConfig _bc;
+    private DeltaStream _delta;
+    private AisVessel[] _vessels;
+    private double[] _lat, _lon;
+    private Random _rnd = new Random(1);
+    private long _time = 0;
+    private long _bytes = 0, _ticks = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        _bc.clear();
+        var st = (store.equals("columnar") ? new VesselStore(_bc.conf(), vessels) : null);
+        AisPlugin.store = st;
+        _vessels = new AisVessel[vessels];
+        _lat = new double[vessels];
+        _lon = new double[vessels];
+        for (int i = 0; i < vessels; i++) {
+            long mmsi = BenchData.FIRST_MMSI + i;
+            _lat[i] = 58 + _rnd.nextDouble() * 13;
+            _lon[i] = 5 + _rnd.nextDouble() * 25;
+            if (st != null) {
+                st.update(mmsi, null, AisVessel.CLASS_A, 1, -1, "VESSEL " + i, "LA" + (1000 + i % 9000), 
+                    30 + i % 60, 0, Double.NaN, Double.NaN, -1, -1, -1);
+            }
+            else {
+                AisVessel v = new AisVessel(null, mmsi);
+                v.setName("VESSEL " + i);
+                v.setCallsign("LA" + (1000 + i % 9000));
+                v.setType(30 + i % 60);
+                AisPlugin.index.put(mmsi, v);
+                _vessels[i] = v;
+            }
+        }
+        _delta = new DeltaStream(30);
+        _move(100);
+        _delta.tick(_time);
+    }
+    
+    
+    private void _move(int percent) {
+        _time += 2000;
+        for (int i = 0; i < vessels; i++) {
+            if (_rnd.nextInt(100) >= percent)
+                continue;
+            /* About 10 knots for 2 seconds */
+            _lat[i] += 0.0001;
+            _lon[i] += 0.0001;
+            int speed = 15 + _rnd.nextInt(5), course = _rnd.nextInt(360);
+            var st = AisPlugin.store;
+            if (st != null)
+                st.update(BenchData.FIRST_MMSI + i, null, AisVessel.CLASS_A, _time, -1, null, null, 0, 
+                    _time, _lat[i], _lon[i], speed, course, course);
+            else {
+                _vessels[i].updatePosition(new Date(_time), new LatLng(_lat[i], _lon[i]));
+                _vessels[i].setMotion(speed, course, course);
+            }
+        }
+    }
+
+
+    @Setup(Level.Invocation)
+    public void move()
+       { _move(moving); }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s, %d%% moving: %d bytes/tick, key frame %d bytes%n", 
+            store, moving, _bytes / Math.max(1, _ticks), _delta.keyFrame().length);
+        _bc.clear();
+        AisPlugin.store = null;
+    }
+
+
+    @Benchmark
+    public void tick() {
+        _delta.tick(_time);
+        _bytes += _delta.lastSize();
+        _ticks++;
+    }
+}
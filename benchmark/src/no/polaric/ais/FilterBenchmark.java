@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.message.AisMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Ingest filtering. Point tests against an irregular polygon with the given 
+ * number of vertices, using the cell map and using ray casting only, and the 
+ * filter applied to decoded messages. One operation is one batch of positions 
+ * or messages.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark
+{
+    private static final int N = 10000;
+
+    @Param({"20", "500"})
+    public int vertices;
+
+    private IngestFilter.Polygon _poly;
+    private double[] _lat, _lon;
+    private IngestFilter _filter;
+    private AisMessage[] _msgs;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        StubConfig bc = new StubConfig();
+        Random rnd = new Random(1);
+        
+        /* Star shaped polygon around 64N 15E, covering part of the test data */
+        double[] plat = new double[vertices], plon = new double[vertices];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < vertices; i++) {
+            double a = 2 * Math.PI * i / vertices, r = 3 + rnd.nextDouble() * 3;
+            plat[i] = 64 + r * Math.sin(a);
+            plon[i] = 15 + 2 * r * Math.cos(a);
+            sb.append(plon[i]).append(',').append(plat[i]).append(' ');
+        }
+        _poly = new IngestFilter.Polygon(plat, plon);
+        _lat = new double[N];
+        _lon = new double[N];
+        for (int i = 0; i < N; i++) {
+            _lat[i] = 58 + rnd.nextDouble() * 12;
+            _lon[i] = 3 + rnd.nextDouble() * 24;
+        }
+        
+        bc.props().setProperty("channel.bench.filter.polygon", sb.toString());
+        bc.props().setProperty("channel.bench.filter.mmsi.deny", "00*, 99*");
+        _filter = IngestFilter.create(bc.conf(), "bench");
+        BenchData data = new BenchData(1);
+        _msgs = new AisMessage[N];
+        for (int i = 0; i < N; i++)
+            _msgs[i] = data.message(i % 5 == 0 ? 18 : 1, BenchData.FIRST_MMSI + i);
+    }
+
+
+    @Benchmark
+    public void cells(Blackhole bh) {
+        for (int i = 0; i < N; i++)
+            bh.consume(_poly.contains(_lat[i], _lon[i]));
+    }
+
+
+    @Benchmark
+    public void rayCasting(Blackhole bh) {
+        for (int i = 0; i < N; i++)
+            bh.consume(_poly.inside(_lat[i], _lon[i]));
+    }
+
+
+    @Benchmark
+    public void accept(Blackhole bh) {
+        for (AisMessage m : _msgs)
+            bh.consume(_filter.accept(m));
+    }
+}
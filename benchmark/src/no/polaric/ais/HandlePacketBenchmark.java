@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.packet.AisPacket;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Throughput of AisChannel.handlePacket per message type. Packets are decoded
+ * in advance (AisPacket caches the decoded message) and the vessels exist in the
+ * DB, so this measures the plugin's own processing and the batch DB update.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlePacketBenchmark
+{
+    @Param({"1", "2", "3", "5", "18", "19", "24", "27"})
+    public int msgType;
+
+    @Param({"10000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private AisChannel _chan;
+    private UpdateBatch _batch;
+    private AisPacket[] _packets;
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        _bc = new StubConfig();
+        _chan = new TcpAisChannel(_bc.conf(), "bench");
+        _batch = new UpdateBatch(_chan);
+        _packets = new BenchData(1).packets(msgType, vessels);
+        for (AisPacket p : _packets) {
+            p.getAisMessage();
+            _chan.handlePacket(p, _batch);
+        }
+        _batch.flush();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+       { _bc.clear(); }
+
+
+    @Benchmark
+    public void handlePacket() {
+        _chan.handlePacket(_packets[_next], _batch);
+        _batch.flush();
+        if (++_next == _packets.length)
+            _next = 0;
+    }
+}
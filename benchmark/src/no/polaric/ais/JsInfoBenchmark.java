@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Generation of JSON info and descriptions for all vessels, as on a client
+ * refresh. Ship types and nav statuses cover the whole range. One operation
+ * is one pass over all vessels.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsInfoBenchmark
+{
+    @Param({"50000"})
+    public int vessels;
+
+    private AisVessel[] _vessels;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        new StubConfig();
+        Random rnd = new Random(1);
+        _vessels = new AisVessel[vessels];
+        for (int i = 0; i < vessels; i++) {
+            AisVessel v = new AisVessel(null, BenchData.FIRST_MMSI + i);
+            v.setName("VESSEL " + i);
+            v.setCallsign("LA" + (1000 + i % 9000));
+            v.setType(rnd.nextInt(100));
+            v.setNavStatus(rnd.nextInt(16));
+            _vessels[i] = v;
+        }
+    }
+
+
+    @Benchmark
+    public void jsInfo(Blackhole bh) {
+        for (AisVessel v : _vessels)
+            bh.consume(v.getJsInfo());
+    }
+
+
+    @Benchmark
+    public void descr(Blackhole bh) {
+        for (AisVessel v : _vessels)
+            bh.consume(v.getDescr());
+    }
+}
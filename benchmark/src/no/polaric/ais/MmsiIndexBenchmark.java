@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Vessel lookup by MMSI: The plugin's MmsiIndex compared to building the
+ * "MMSI:" ident and looking it up in a String keyed map, as the point DB does.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MmsiIndexBenchmark
+{
+    @Param({"10000", "100000", "1000000"})
+    public int vessels;
+
+    private MmsiIndex _index;
+    private HashMap<String, AisVessel> _map;
+    private long[] _lookups;
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _index = new MmsiIndex(vessels);
+        _map = new HashMap<String, AisVessel>(vessels * 2);
+        for (int i = 0; i < vessels; i++) {
+            long mmsi = BenchData.FIRST_MMSI + i;
+            AisVessel v = new AisVessel(null, mmsi);
+            _index.put(mmsi, v);
+            _map.put(v.getIdent(), v);
+        }
+        Random rnd = new Random(1);
+        _lookups = new long[4096];
+        for (int i = 0; i < _lookups.length; i++)
+            _lookups[i] = BenchData.FIRST_MMSI + rnd.nextInt(vessels);
+    }
+
+
+    @Benchmark
+    public AisVessel indexLookup() {
+        long id = _lookups[_next];
+        _next = (_next + 1) & 4095;
+        return _index.get(id);
+    }
+
+
+    @Benchmark
+    public AisVessel stringLookup() {
+        long id = _lookups[_next];
+        _next = (_next + 1) & 4095;
+        return _map.get("MMSI:"+id);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.packet.AisPacket;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Full path from NMEA string to vessel state: Parse the sentences, decode the 
+ * message, process it and apply the DB update. The input is a mix of message 
+ * types resembling a coastal feed.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NmeaThroughputBenchmark
+{
+    @Param({"1000", "20000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private AisChannel _chan;
+    private UpdateBatch _batch;
+    private String[] _feed;
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        _chan = new TcpAisChannel(_bc.conf(), "bench");
+        _batch = new UpdateBatch(_chan);
+        _feed = new BenchData(1).feed(100000, vessels);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+       { _bc.clear(); }
+
+
+    @Benchmark
+    public void nmeaToVessel() {
+        _chan.handlePacket(AisPacket.from(_feed[_next]), _batch);
+        _batch.flush();
+        if (++_next == _feed.length)
+            _next = 0;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.packet.AisPacket;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Line to vessel state, through the sentence assembler, with and without the
+ * pre-filter that drops unused message types before decoding. A share of the
+ * feed is base station reports and aids to navigation. Throughput is in lines.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrefilterBenchmark
+{
+    @Param({"true", "false"})
+    public boolean prefilter;
+
+    @Param({"40"})
+    public int unused;
+
+    private StubConfig _bc;
+    private AisChannel _chan;
+    private UpdateBatch _batch;
+    private SentenceAssembler _asm;
+    private String[] _lines;
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        _chan = new TcpAisChannel(_bc.conf(), "bench");
+        _batch = new UpdateBatch(_chan);
+        _asm = new SentenceAssembler(32, 10000, prefilter);
+        ArrayList<String> lines = new ArrayList<String>();
+        for (String s : new BenchData(1).feed(100000, 5000, unused))
+            lines.addAll(Arrays.asList(s.split("\r\n")));
+        _lines = lines.toArray(new String[0]);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+       { _bc.clear(); }
+
+
+    @Benchmark
+    public void lineToVessel() {
+        AisPacket p = _asm.add(_lines[_next], System.currentTimeMillis());
+        if (p != null) {
+            _chan.handlePacket(p, _batch);
+            _batch.flush();
+        }
+        if (++_next == _lines.length)
+            _next = 0;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Dead reckoning of all vessels in the columnar store: Projection of all 
+ * vessels as done once per tick, and a bounding box query that uses the 
+ * projection of the current tick, as done by each client request. 
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark
+{
+    @Param({"100000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private PositionProjector _proj;
+    private long _time;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        var st = new VesselStore(_bc.conf(), vessels);
+        AisPlugin.store = st;
+        Random rnd = new Random(1);
+        _time = 1000000;
+        for (int i = 0; i < vessels; i++) {
+            st.update(BenchData.FIRST_MMSI + i, null, AisVessel.CLASS_B, _time, -1, null, null, 0, 
+                _time - rnd.nextInt(180000), 58 + rnd.nextDouble() * 13, 5 + rnd.nextDouble() * 25, 
+                rnd.nextInt(40), rnd.nextInt(360), rnd.nextInt(360));
+        }
+        _proj = new PositionProjector(1000, 300000);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _bc.clear();
+        AisPlugin.store = null;
+    }
+
+
+    /** Project all vessels, a new tick each time. */
+    @Benchmark
+    public PositionProjector.Projection tick() {
+        _time += 1000;
+        return _proj.get(_time);
+    }
+
+
+    /** Vessels in a 1 x 2 degree box, from the projection of the current tick. */
+    @Benchmark
+    public int[] query() {
+        return _proj.get(_time).bbox(63, 10, 64, 12);
+    }
+}
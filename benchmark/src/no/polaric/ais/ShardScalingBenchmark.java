@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.packet.AisPacket;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Throughput of a channel with 1 to 8 ingest workers. Each invocation feeds a
+ * burst of packets through receivePacket, as a reader thread does, and waits
+ * until all of them are processed. Decoding is done by the workers.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardScalingBenchmark
+{
+    private static final int BURST = 10000;
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    @Param({"20000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private AisChannel _chan;
+    private String[] _feed;
+    private AisPacket[] _burst = new AisPacket[BURST];
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        _bc.props().setProperty("channel.bench.workers", ""+workers);
+        _bc.props().setProperty("channel.bench.queue.policy", "block");
+        _bc.props().setProperty("channel.bench.queue.size", ""+(BURST * 2));
+        _chan = new TcpAisChannel(_bc.conf(), "bench");
+        _chan.startIngest();
+        _feed = new BenchData(1).feed(100000, vessels);
+    }
+
+
+    /* Parse the sentences of the next burst. Not part of the measurement. */
+    @Setup(Level.Invocation)
+    public void prepare() {
+        for (int i = 0; i < BURST; i++) {
+            _burst[i] = AisPacket.from(_feed[_next]);
+            if (++_next == _feed.length)
+                _next = 0;
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _chan.stopIngest();
+        _bc.clear();
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() {
+        long target = _chan.heardMsgs() + BURST;
+        for (AisPacket p : _burst)
+            _chan.receivePacket(p);
+        while (_chan.heardMsgs() < target)
+            Thread.onSpinWait();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.message.*;
+import dk.dma.ais.packet.AisPacket;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Throughput of AisChannel.updateStatic for message 5, 19 and 24. Each vessel
+ * gets the same static data over and over again, which is what happens on a
+ * real feed. Messages are decoded from NMEA, so text fields are padded as
+ * received.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateStaticBenchmark
+{
+    @Param({"5", "19", "24"})
+    public int msgType;
+
+    @Param({"10000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private AisChannel _chan;
+    private AisVessel[] _vessels;
+    private AisStaticCommon[] _msgs;
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        _chan = new TcpAisChannel(_bc.conf(), "bench");
+        BenchData data = new BenchData(1);
+        _vessels = new AisVessel[vessels];
+        _msgs = new AisStaticCommon[vessels];
+        for (int i = 0; i < vessels; i++) {
+            long mmsi = BenchData.FIRST_MMSI + i;
+            _vessels[i] = new AisVessel(null, mmsi);
+            _msgs[i] = (AisStaticCommon) AisPacket.from(data.nmea(msgType, mmsi)).tryGetAisMessage();
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+       { _bc.clear(); }
+
+
+    @Benchmark
+    public void updateStatic() {
+        _chan.updateStatic(_vessels[_next], _msgs[_next]);
+        if (++_next == _vessels.length)
+            _next = 0;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import no.polaric.aprsd.point.*;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Bounding box queries in the VesselGrid compared with a linear scan of all
+ * vessels. Vessels are spread along the Norwegian coast, and the boxes are
+ * 1 x 2 degree map viewports.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VesselGridBenchmark
+{
+    @Param({"10000", "100000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private AisVessel[] _vessels;
+    private double[] _boxes;
+    private int _next = 0;
+
+
+    @Setup(Level.Trial)
+    public void setup() {
+        _bc = new StubConfig();
+        Random rnd = new Random(1);
+        _vessels = new AisVessel[vessels];
+        for (int i = 0; i < vessels; i++) {
+            double lat = 58 + rnd.nextDouble() * 13, lon = 5 + rnd.nextDouble() * 25;
+            _vessels[i] = new AisVessel(null, BenchData.FIRST_MMSI + i);
+            _vessels[i].updatePosition(new Date(), new LatLng(lat, lon));
+            AisPlugin.grid.update(_vessels[i], lat, lon);
+        }
+        _boxes = new double[1024 * 2];
+        for (int i = 0; i < _boxes.length; i += 2) {
+            _boxes[i] = 58 + rnd.nextDouble() * 12;
+            _boxes[i + 1] = 5 + rnd.nextDouble() * 23;
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+       { _bc.clear(); }
+
+
+    @Benchmark
+    public List<AisVessel> grid() {
+        double lat = _boxes[_next], lon = _boxes[_next + 1];
+        _next = (_next + 2) % _boxes.length;
+        return AisPlugin.grid.bbox(lat, lon, lat + 1, lon + 2);
+    }
+
+
+    @Benchmark
+    public List<AisVessel> linearScan() {
+        double lat = _boxes[_next], lon = _boxes[_next + 1];
+        _next = (_next + 2) % _boxes.length;
+        ArrayList<AisVessel> res = new ArrayList<AisVessel>();
+        for (AisVessel v : _vessels) {
+            LatLng p = v.getPosition();
+            if (p != null && p.getLat() >= lat && p.getLat() <= lat + 1
+                  && p.getLng() >= lon && p.getLng() <= lon + 2)
+                res.add(v);
+        }
+        return res;
+    }
+}
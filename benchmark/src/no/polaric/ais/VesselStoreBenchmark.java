@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.lang.management.*;
+import java.util.concurrent.TimeUnit;
+import dk.dma.ais.packet.AisPacket;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Vessels as AisVessel objects in the point DB versus the columnar store. 
+ * The setup adds static data and a position for each vessel through 
+ * handlePacket, and prints the retained heap and the time of a full GC 
+ * with the vessels live. The benchmark is steady position updates; run it 
+ * with -prof gc for allocation and GC time. 
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VesselStoreBenchmark
+{
+    @Param({"objects", "columnar"})
+    public String store;
+
+    @Param({"100000", "500000"})
+    public int vessels;
+
+    private StubConfig _bc;
+    private AisChannel _chan;
+    private UpdateBatch _batch;
+    private AisPacket[] _packets;
+    private int _next = 0;
+
+
+    private static long _heapUsed() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        _bc = new StubConfig();
+        long before = _heapUsed();
+        AisPlugin.store = (store.equals("columnar") ? new VesselStore(_bc.conf(), vessels) : null);
+        _chan = new TcpAisChannel(_bc.conf(), "bench");
+        _batch = new UpdateBatch(_chan);
+        BenchData data = new BenchData(1);
+        
+        for (int i = 0; i < vessels; i++) {
+            _chan.handlePacket(AisPacket.from(data.nmea(5, BenchData.FIRST_MMSI + i)), _batch);
+            _chan.handlePacket(AisPacket.from(data.nmea(1, BenchData.FIRST_MMSI + i)), _batch);
+            if (i % 256 == 0)
+                _batch.flush();
+        }
+        _batch.flush();
+        
+        long after = _heapUsed();
+        long t = System.nanoTime();
+        System.gc();
+        long gc = (System.nanoTime() - t) / 1000000;
+        System.out.printf("%n%s, %d vessels: %.1f MB retained (%d B/vessel), full GC %d ms%n", 
+            store, vessels, (after - before) / 1e6, (after - before) / vessels, gc);
+            
+        _packets = data.packets(1, 10000);
+        for (AisPacket p : _packets)
+            p.getAisMessage();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _bc.clear();
+        AisPlugin.store = null;
+    }
+
+
+    @Benchmark
+    public void positions() {
+        _chan.handlePacket(_packets[_next], _batch);
+        if (++_next == _packets.length) {
+            _next = 0;
+            _batch.flush();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import no.polaric.core.*;
+import no.polaric.core.httpd.*;
+import no.polaric.aprsd.*;
+import java.util.*;
+
+
+/**
+ * REST API of the AIS plugin. 
+ */
+
+public class AisApi extends ServerBase
+{
+    private AprsServerConfig _conf;
+
+
+    public AisApi(AprsServerConfig conf) {
+        super(conf);
+        _conf = conf;
+    }
+
+
+
+    /** Set up the handlers */
+    public void start() {
+
+        /* 
+         * Ingest metrics of the AIS channels in Prometheus text format.
+         */
+        a.get("/ais/metrics", (ctx) -> {
+            ctx.contentType("text/plain; version=0.0.4");
+            ctx.result(AisChannel.prometheusMetrics());
+        });
+        
+        
+        /*
+         * Vessels in an area, from the plugin's spatial index. Either 
+         * bbox=west,south,east,north or lat=..&lon=..&radius=.. (meters).
+         * With the columnar store, the store is searched instead. 
+         */
+        a.get("/ais/vessels", (ctx) -> {
+            List<AisVessel> vs;
+            var store = AisPlugin.store;
+            try {
+                String bbox = ctx.queryParam("bbox");
+                if (bbox != null) {
+                    String[] b = bbox.split(",");
+                    if (b.length != 4)
+                        throw new NumberFormatException("bbox needs 4 values");
+                    double minLat = Double.parseDouble(b[1]), minLon = Double.parseDouble(b[0]);
+                    double maxLat = Double.parseDouble(b[3]), maxLon = Double.parseDouble(b[2]);
+                    vs = (store != null ? store.bbox(minLat, minLon, maxLat, maxLon) 
+                                        : AisPlugin.grid.bbox(minLat, minLon, maxLat, maxLon));
+                }
+                else if (ctx.queryParam("radius") != null) {
+                    double lat = Double.parseDouble(ctx.queryParam("lat"));
+                    double lon = Double.parseDouble(ctx.queryParam("lon"));
+                    double radius = Double.parseDouble(ctx.queryParam("radius"));
+                    vs = (store != null ? store.radius(lat, lon, radius) : AisPlugin.grid.radius(lat, lon, radius));
+                }
+                else {
+                    ctx.status(400).result("Missing bbox or radius parameter");
+                    return;
+                }
+            }
+            catch (NumberFormatException | NullPointerException e) {
+                ctx.status(400).result("Invalid parameters: "+e.getMessage());
+                return;
+            }
+            List<AisVessel.JsInfo> res = new ArrayList<AisVessel.JsInfo>(vs.size());
+            for (AisVessel v : vs)
+                res.add(v.getJsInfo());
+            ctx.json(res);
+        });
+        
+        
+        /*
+         * Positions of vessels in a bounding box, extrapolated from the last 
+         * report with speed and course: bbox=west,south,east,north. 
+         */
+        a.get("/ais/projected", (ctx) -> {
+            var proj = AisPlugin.projector;
+            if (proj == null) {
+                ctx.status(404).result("Position projection is not enabled");
+                return;
+            }
+            List<PositionProjector.JsPos> res;
+            try {
+                String[] b = ctx.queryParam("bbox").split(",");
+                if (b.length != 4)
+                    throw new NumberFormatException("bbox needs 4 values");
+                res = proj.bbox(Double.parseDouble(b[1]), Double.parseDouble(b[0]),
+                                Double.parseDouble(b[3]), Double.parseDouble(b[2]));
+            }
+            catch (NumberFormatException | NullPointerException e) {
+                ctx.status(400).result("Invalid parameters: "+e.getMessage());
+                return;
+            }
+            ctx.json(res);
+        });
+        
+        
+        /*
+         * Changes of vessels since frame number 'since', in the binary format 
+         * of DeltaStream. A key frame with all vessels if since is 0 or missing, 
+         * or if the client is too far behind. The last frame number is in the 
+         * X-Ais-Seq header.
+         */
+        a.get("/ais/delta", (ctx) -> {
+            var delta = AisPlugin.delta;
+            if (delta == null) {
+                ctx.status(404).result("Delta stream is not enabled");
+                return;
+            }
+            long since = 0;
+            try {
+                String s = ctx.queryParam("since");
+                if (s != null)
+                    since = Long.parseLong(s);
+            }
+            catch (NumberFormatException e) {
+                ctx.status(400).result("Invalid parameters: "+e.getMessage());
+                return;
+            }
+            byte[] res;
+            long seq;
+            synchronized (delta) {
+                res = delta.since(since);
+                seq = delta.seq();
+            }
+            ctx.header("X-Ais-Seq", ""+seq);
+            ctx.contentType("application/octet-stream");
+            ctx.result(res);
+        });
+    }
+}
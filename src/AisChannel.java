@@ -22,6 +22,8 @@ import no.polaric.aprsd.point.*;
 import dk.dma.ais.packet.AisPacket;
 import dk.dma.ais.reader.*;
 import java.util.function.Consumer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import dk.dma.ais.message.*;
 import dk.dma.ais.sentence.*;
 import com.fasterxml.jackson.annotation.*;
@@ -30,12 +32,15 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.*;
 
 /**
  * AIS Channel base class. Use TcpAisChannel for TCP connections or SerialAisChannel for serial port connections.
+ * UdpAisChannel receives NMEA datagrams. FileAisChannel replays recorded NMEA from a file.
  */
  
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
 @JsonSubTypes({
     @Type(value = TcpAisChannel.JsConfig.class, name = "AIS-TCP"),
-    @Type(value = SerialAisChannel.JsConfig.class, name = "AIS-SERIAL")
+    @Type(value = SerialAisChannel.JsConfig.class, name = "AIS-SERIAL"),
+    @Type(value = FileAisChannel.JsConfig.class, name = "AIS-FILE"),
+    @Type(value = UdpAisChannel.JsConfig.class, name = "AIS-UDP")
 })
 public abstract class AisChannel extends Channel
 {
@@ -43,14 +48,37 @@ public abstract class AisChannel extends Channel
     transient protected   int       _chno;
     protected static int _next_chno = 0;
     transient protected Logfile log = AisPlugin.log;
-    transient protected  long _vessels   = 0;
-    transient protected  long _messages  = 0; 
+    transient protected  LongAdder _vessels   = new LongAdder();
+    transient protected  LongAdder _live      = new LongAdder();
+    transient protected  LongAdder _messages  = new LongAdder(); 
+    transient protected  LongAdder _duplicates = new LongAdder();
+    transient protected  volatile IngestQueue[] _ingest;
+    transient protected  SentenceAssembler _assembler;
+    transient protected  final IngestMetrics _metrics = new IngestMetrics();
+    
+    /* Active AIS channels */
+    protected static final List<AisChannel> _active = new CopyOnWriteArrayList<AisChannel>();
+    transient protected  long _coalesceTime = 0;
+    transient protected  int  _coalesceSpeed, _coalesceCourse;
+    transient protected  TrailPolicy _trail = TrailPolicy.ALL;
+    transient protected  double _visibleMove = 20;
+    transient protected  boolean _prefilter = true;
+    transient protected  LongAdder _skipped   = new LongAdder();
+    transient protected  LongAdder _shed      = new LongAdder();
+    transient protected  volatile OverloadController _overload;
+    transient protected  volatile IngestFilter _filter;
+    
+    /* Generation of the reader whose input is processed, and of a new reader waiting to take over */
+    transient private    volatile int _readerGen = 0, _candidateGen = -1;
+    transient private    int _lastGen = 0;
     
         
     /* Register subtypes for deserialization */
     public static void classInit() { 
         ServerBase.addSubtype(TcpAisChannel.JsConfig.class, "AIS-TCP");
         ServerBase.addSubtype(SerialAisChannel.JsConfig.class, "AIS-SERIAL");
+        ServerBase.addSubtype(FileAisChannel.JsConfig.class, "AIS-FILE");
+        ServerBase.addSubtype(UdpAisChannel.JsConfig.class, "AIS-UDP");
     }
 
         
@@ -69,16 +97,76 @@ public abstract class AisChannel extends Channel
      */
     
     public static class JsConfig extends Channel.JsConfig {
-        public long messages, vessels;
+        public long messages, vessels, live;
+        public long queued, dropped, coalesced;
+        public int workers;
+        public long assembled, expired, evicted, orphaned, invalid;
+        public long duplicates, skipped;
+        public long shed, lag;
+        public int shedLevel;
+        public String shedState;
+        public long parseErrors, invalidPos, badLat;
+        public long elided;
+        public Map<Integer, Double> rates;
+        public Map<String, Long> filtered;
+        public double latencyP50, latencyP99, dbP50, dbP99;
     }
     
+    
+    /**
+     * Set the counters that are common for all AIS channel types.
+     */
+    protected void setCounters(JsConfig cnf) {
+        cnf.messages = _messages.sum();
+        cnf.vessels = _vessels.sum();
+        cnf.live = _live.sum();
+        cnf.duplicates = _duplicates.sum();
+        cnf.skipped = _skipped.sum();
+        cnf.shed = _shed.sum();
+        var ovl = _overload;
+        if (ovl != null) {
+            cnf.shedLevel = ovl.level();
+            cnf.shedState = ovl.levelText();
+            cnf.lag = ovl.lag();
+        }
+        cnf.parseErrors = _metrics.parseErrors.sum();
+        cnf.invalidPos = _metrics.invalidPos.sum();
+        cnf.badLat = _metrics.badLat.sum();
+        cnf.elided = _metrics.elided.sum();
+        cnf.rates = _metrics.rates();
+        cnf.latencyP50 = _metrics.latency.percentile(0.5) / 1000.0;
+        cnf.latencyP99 = _metrics.latency.percentile(0.99) / 1000.0;
+        cnf.dbP50 = _metrics.dbTime.percentile(0.5) / 1000.0;
+        cnf.dbP99 = _metrics.dbTime.percentile(0.99) / 1000.0;
+        var filter = _filter;
+        if (filter != null)
+            cnf.filtered = filter.counts();
+        var ingest = _ingest;
+        if (ingest != null) {
+            cnf.workers = ingest.length;
+            for (IngestQueue q : ingest) {
+                cnf.queued += q.depth();
+                cnf.dropped += q.dropped();
+                cnf.coalesced += q.coalesced();
+            }
+        }
+        var asm = _assembler;
+        if (asm != null) {
+            cnf.assembled = asm.completed();
+            cnf.expired = asm.expired();
+            cnf.evicted = asm.evicted();
+            cnf.orphaned = asm.orphaned();
+            cnf.invalid = asm.invalid();
+            cnf.skipped += asm.skipped();
+        }
+    }
        
        
     public long heardVessels()
-       { return _vessels; }
+       { return _vessels.sum(); }
        
     public long heardMsgs()
-       { return _messages; }
+       { return _messages.sum(); }
        
    
     /**
@@ -88,119 +176,285 @@ public abstract class AisChannel extends Channel
    
  
  
-    // Reusable Calendar instance to reduce object allocation
-    private final ThreadLocal<Calendar> calendarCache = ThreadLocal.withInitial(Calendar::getInstance);
-    
     /**
-     * Update position.
+     * Update position. The course of the vessel is its heading, for display. 
+     * Course over ground is kept separately, for dead reckoning. 
      */
-    protected void updatePos(AisVessel st, IPositionMessage msg) {
+    protected void updatePos(AisVessel st, IPositionMessage msg, UpdateBatch batch) {
 
         AisPosition pos = msg.getPos();
         double lat = pos.getLatitudeDouble();
         double lon = pos.getLongitudeDouble();
-        int speed=-1, course=-1;
-         
-        // Reuse Calendar instance instead of creating new one
-        Calendar ts = calendarCache.get();
-        long currentTimeMillis = System.currentTimeMillis();
-        ts.setTimeInMillis(currentTimeMillis);
+        int speed=-1, course=-1, cog=-1;
+        long time = System.currentTimeMillis();
             
         if (msg instanceof IVesselPositionMessage) {
             var mm = (IVesselPositionMessage) msg;
-            if (!mm.isPositionValid())
+            if (!mm.isPositionValid()) {
+                _metrics.invalidPos.increment();
                 return;
+            }
                 
             speed = (mm.isSogValid() ? (int) Math.round(mm.getSog() * 0.1852) : -1);
             course = (mm.isHeadingValid() ? mm.getTrueHeading() : -1);
+            cog = cog(mm);
                 
             /* Adjust timestamp */
-            int zsec = mm.getUtcSec();
-            if (zsec < 60) {
-                ts.set(Calendar.SECOND, zsec);
-                // Cache the time limit calculation
-                long timeLimit = currentTimeMillis + 3000;
-                // Use add() instead of roll() to prevent infinite loop
-                // add() properly handles field overflow unlike roll()
-                while (ts.getTimeInMillis() > timeLimit)
-                    ts.add(Calendar.MINUTE, -1); 
-            }
+            time = AisTimestamp.resolve(time, mm.getUtcSec());
+        }
+        else if (msg instanceof AisMessage27) {
+            /* Long range: Knots and degrees, 63 and 511 if not available */
+            var m27 = (AisMessage27) msg;
+            speed = (m27.getSog() < 63 ? (int) Math.round(m27.getSog() * 1.852) : -1);
+            course = cog = (m27.getCog() < 360 ? m27.getCog() : -1);
         }
         
         if (lat>90 || lat<-90) {
+            _metrics.badLat.increment();
             log.debug(null, chId()+"Latitude out of bounds ("+st.getIdent()+") "+lat);
             return;
         }
-        LatLng prevpos = (st.getPosition()==null ? null : st.getPosition());
-        if ( st.saveToTrail(ts.getTime(), new LatLng(lat, lon), speed, course, 
-                (msg instanceof AisMessage27 ? "AISLONG" : "AIS"))) 
-        {
-            st.updatePosition(ts.getTime(), new LatLng(lat, lon));    
-            _conf.getDB().updateItem(st, prevpos);
+        _position(st, time, lat, lon, speed, course, cog, msg instanceof AisMessage27, batch);
+    }
+    
+    
+    
+    /* Coalesce or store a validated position, see storePos */
+    private void _position(AisVessel st, long time, double lat, double lon, 
+                           int speed, int course, int cog, boolean longRange, UpdateBatch batch) 
+    {
+        String path = (longRange ? "AISLONG" : "AIS");
+        if (_coalesceTime > 0) {
+            if (!significantChange(st, speed, course)) {
+                batch.hold(st, time, lat, lon, speed, course, cog, path);
+                return;
+            }
+            /* Keep the last position before the change as a trail point */
+            batch.release(st);
+        }
+        storePos(st, time, lat, lon, speed, course, cog, path, batch);
+    }
+   
+   
+   
+    /** Course over ground in whole degrees, -1 if not available (3600). */
+    static int cog(IVesselPositionMessage mm)
+       { return (mm.isCogValid() ? (int) Math.round(mm.getCog() / 10.0) % 360 : -1); }
+   
+   
+   
+    /**
+     * Store a position of a vessel: Save the previous position to the trail, 
+     * update the position and register the DB update in batch. If the trail 
+     * policy does not keep the report, only the position is updated, and only 
+     * if the change is visible: The vessel has moved channel.<id>.trail.visible 
+     * meters (default 20), or speed or course has changed as in significantChange. 
+     * Otherwise the report causes no DB update. 
+     * With the columnar store, st is a view and the store has its own grid. 
+     */
+    protected void storePos(AisVessel st, long time, double lat, double lon, 
+                            int speed, int course, int cog, String path, UpdateBatch batch) 
+    {
+        LatLng prevpos = st.getPosition();
+        boolean keep = _trail.keep(st, time, lat, lon, speed, course, cog);
+        if (!keep) {
+            _metrics.elided.increment();
+            if (!_moved(prevpos, lat, lon) && !significantChange(st, speed, course))
+                return;
+        }
+        Date ts = new Date(time);
+        LatLng pos = new LatLng(lat, lon);
+        if (!keep || st.saveToTrail(ts, pos, speed, course, path)) {
+            st.updatePosition(ts, pos);    
+            if (AisPlugin.store == null)
+                AisPlugin.grid.update(st, lat, lon);
+            batch.add(st, prevpos);
         }
-        st.setSpeed(speed);
-        st.setCourse(course);
+        st.setMotion(speed, course, cog);
+    }
+   
+   
+   
+    /* Return true if a position is _visibleMove meters or more from prevpos */
+    private boolean _moved(LatLng prevpos, double lat, double lon) {
+        if (prevpos == null)
+            return true;
+        double dn = Math.toRadians(lat - prevpos.getLat()) * VesselGrid.EARTH_RADIUS;
+        double de = Math.toRadians(lon - prevpos.getLng()) * VesselGrid.EARTH_RADIUS * Math.cos(Math.toRadians(lat));
+        return dn*dn + de*de >= _visibleMove * _visibleMove;
+    }
+   
+   
+   
+    /**
+     * Return true if speed or course has changed more than the coalescing 
+     * thresholds since the last stored position. 
+     */
+    protected boolean significantChange(AisVessel st, int speed, int course) {
+        if (st.getPosition() == null)
+            return true;
+        int pspeed = st.getSpeed(), pcourse = st.getCourse();
+        if ((speed < 0) != (pspeed < 0) || Math.abs(speed - pspeed) >= _coalesceSpeed)
+            return true;
+        if (course < 0 || pcourse < 0)
+            return (course < 0) != (pcourse < 0);
+        int diff = Math.abs(course - pcourse) % 360;
+        if (diff > 180)
+            diff = 360 - diff;
+        return diff >= _coalesceCourse;
     }
    
 
    
-    protected void updatePosExtra(AisVessel st, AisPositionMessage msg) {
-        updatePos(st, msg);
+    protected void updatePosExtra(AisVessel st, AisPositionMessage msg, UpdateBatch batch) {
+        /* Before the position, the trail policy may use it */
         st.setNavStatus(msg.getNavStatus());
+        updatePos(st, msg, batch);
     }
     
    
+    /**
+     * Set tag for a vessel according to its ship type. 
+     */
+    protected static void setTypeTag(AisVessel st, int type) {
+       String tag = AisTypes.typeTag(type);
+       if (tag != null)
+          st.setTag(tag);
+    }
+    
+    
+    
    /**
-    * Process static AIS message.
+    * Process static AIS message. Name, callsign and type are compared with what the 
+    * vessel has, so unchanged static data costs no allocation and no tagging. 
+    * New names and callsigns are taken from the text pool. 
     */
     protected void updateStatic(AisVessel st, AisStaticCommon msg) {    
        int type = msg.getShipType();
-       String callsign = AisMessage.trimText(msg.getCallsign());
-       String name = AisMessage.trimText(msg.getName());
+       String rname = msg.getName();
+       String rcallsign = msg.getCallsign();
+       boolean first = st.isLabelHidden();
        
-       if (name != null && name.length() > 0)
-          st.setName(name);
-       if (callsign != null && callsign.length() > 0)
-          st.setCallsign(callsign);
-       if (type != 0) {
+       if (rname != null && !TextPool.same(rname, st.getName())) {
+          String name = AisPlugin.texts.get(rname);
+          if (name.length() > 0)
+             st.setName(name);
+       }
+       if (rcallsign != null && !TextPool.same(rcallsign, st.getCallsign())) {
+          String callsign = AisPlugin.texts.get(rcallsign);
+          if (callsign.length() > 0)
+             st.setCallsign(callsign);
+       }
+       boolean newtype = (type != 0 && type != st.getType());
+       if (newtype) {
           st.setType(type);
-          // Cache the division to avoid repeated calculations
-          int typeCategory = type / 10;
-          
-          if (type == 51)
-             st.setTag("AIS.SAR");
-          else if (type == 55)
-             st.setTag("AIS.law");
-          else if (type == 58)
-             st.setTag("AIS.medical");
-          else if (typeCategory == 4 || typeCategory == 6)
-             st.setTag("AIS.passenger");
-          else if (typeCategory == 5)
-             st.setTag("AIS.special");
-          else if (typeCategory == 7)
-             st.setTag("AIS.cargo");
-          else if (typeCategory == 8)
-             st.setTag("AIS.tanker");
+          setTypeTag(st, type);
        }
-       st.setLabelHidden(false); 
-       st.autoTag(); 
-    }
- 
+       if (first)
+          st.setLabelHidden(false); 
+       if (first || newtype)
+          st.autoTag(); 
+    } 
 
+    /**
+     * Process a message when vessels are kept in the plugin's columnar store. What 
+     * the message has is set in one call to the store. A position is then stored 
+     * in the vessel's view, for the map and the trail, as for AisVessel objects: 
+     * It may be coalesced, and the trail policy decides if it is saved to the trail. 
+     */
+    protected void updateStore(VesselStore store, AisMessage msg, UpdateBatch batch) {
+        int msgId = msg.getMsgId();
+        _messages.increment();
+        _metrics.message(msgId);
+        long now = System.currentTimeMillis();
+        byte cls = (msgId == 1 || msgId == 2 || msgId == 3 || msgId == 5 ? AisVessel.CLASS_A 
+                  : msgId == 18 || msgId == 19 || msgId == 24 ? AisVessel.CLASS_B 
+                  : msgId == 27 ? AisVessel.CLASS_LONGRANGE : AisVessel.CLASS_UNKNOWN);
+        
+        String name = null, callsign = null;
+        int type = 0, navstatus = -1;
+        if (msgId == 5 || msgId == 19 || msgId == 24) {
+            var sm = (AisStaticCommon) msg;
+            name = sm.getName();
+            callsign = sm.getCallsign();
+            type = sm.getShipType();
+        }
+        if (msgId == 1 || msgId == 2 || msgId == 3)
+            navstatus = ((AisPositionMessage) msg).getNavStatus();
+            
+        /* Position, validated as in updatePos. NaN if none */
+        double lat = Double.NaN, lon = Double.NaN;
+        int speed=-1, course=-1, cog=-1;
+        long time = now;
+        if (msgId <= 3 || msgId == 18 || msgId == 19 || msgId == 27) {
+            AisPosition pos = ((IPositionMessage) msg).getPos();
+            lat = pos.getLatitudeDouble();
+            lon = pos.getLongitudeDouble();
+            if (msg instanceof IVesselPositionMessage) {
+                var mm = (IVesselPositionMessage) msg;
+                if (!mm.isPositionValid()) {
+                    _metrics.invalidPos.increment();
+                    lat = Double.NaN;
+                }
+                speed = (mm.isSogValid() ? (int) Math.round(mm.getSog() * 0.1852) : -1);
+                course = (mm.isHeadingValid() ? mm.getTrueHeading() : -1);
+                cog = cog(mm);
+                time = AisTimestamp.resolve(time, mm.getUtcSec());
+            }
+            else if (msg instanceof AisMessage27) {
+                var m27 = (AisMessage27) msg;
+                speed = (m27.getSog() < 63 ? (int) Math.round(m27.getSog() * 1.852) : -1);
+                course = cog = (m27.getCog() < 360 ? m27.getCog() : -1);
+            }
+            if (lat>90 || lat<-90) {
+                _metrics.badLat.increment();
+                lat = Double.NaN;
+            }
+        }
+        StoreVessel v = store.update(msg.getUserId(), this, cls, now, navstatus, name, callsign, type, 
+            time, lat, lon, speed, course, cog);
+        v.setSource(this);
+        if (!Double.isNaN(lat))
+            _position(v, time, lat, lon, speed, course, cog, msgId == 27, batch);
+    }
+    
+    
+    
     /** 
-     * Get Point object for AIS message.
+     * Get Point object for AIS message. The plugin's MMSI index is consulted 
+     * before the point DB. 
      */
     protected AisVessel getStn(AisMessage msg) {
         long id = msg.getUserId();
-        AisVessel v = (AisVessel) _conf.getDB().getItem("MMSI:"+id, null);
-        if (v == null) {
-            v = new AisVessel(null, id);
-            v.setLabelHidden(true);
-            v.setTag("AIS");
-            if (getTag() != null && !getTag().equals(""))
-                v.setTag(getTag());
-            _conf.getDB().addItem(v);
-            _vessels++;
+        AisVessel v = AisPlugin.index.get(id);
+        if (v == null || v.expired()) {
+            /* Workers of other channels may look for the same vessel */
+            synchronized (AisPlugin.index) {
+                v = AisPlugin.index.get(id);
+                if (v == null || v.expired()) {
+                    AisVessel old = v;
+                    v = (AisVessel) _conf.getDB().getItem("MMSI:"+id, null);
+                    if (old != null && old != v)
+                        VesselExpiry.release(old);
+                    if (v != null && v._removed) {
+                        /* Expired, and not yet removed from the DB. It is replaced */
+                        VesselExpiry.removeFromDB(_conf, v);
+                        v = null;
+                    }
+                    if (v == null) {
+                        v = new AisVessel(null, id);
+                        v.setLabelHidden(true);
+                        v.setTag("AIS");
+                        if (getTag() != null && !getTag().equals(""))
+                            v.setTag(getTag());
+                        _conf.getDB().addItem(v);
+                        v._creator = this;
+                        _vessels.increment();
+                        _live.increment();
+                    }
+                    AisPlugin.index.put(id, v);
+                }
+            }
         }
         v.setSource(this);        
         return v;
@@ -208,44 +462,142 @@ public abstract class AisChannel extends Channel
 
 
 
+    /**
+     * Receive an AIS packet from the reader. The packet is queued for processing 
+     * by an ingest worker, so the reader thread is never held up by DB updates.
+     * With more than one worker, packets are distributed by MMSI, so the packets 
+     * of a vessel are processed in order, by the same worker.
+     */
+    protected void receivePacket(AisPacket packet) {
+        var ingest = _ingest;
+        if (ingest == null)
+            return;
+        int shard = 0;
+        if (ingest.length > 1) {
+            Vdm vdm = packet.getVdm();
+            long mmsi = (vdm == null ? -1 : AisPayload.mmsi(vdm.getSixbitString()));
+            if (mmsi > 0)
+                shard = (int) (mmsi % ingest.length);
+        }
+        ingest[shard].put(packet);
+    }
+    
+    
+    
+    /**
+     * Return true if a line read as bytes is to be dropped by the pre-filter: It 
+     * is a single fragment message with an id that is not used. Multi-fragment 
+     * messages are left to the assembler, which keeps track of the fragments 
+     * it skips. 
+     */
+    protected boolean skipLine(byte[] buf, int len) {
+        if (!_prefilter)
+            return false;
+        int id = AisPayload.singleMsgId(buf, len);
+        if (id < 0 || AisPayload.supported(id))
+            return false;
+        _skipped.increment();
+        return true;
+    }
+    
+    
+    
+    /**
+     * Receive a line of NMEA text from the reader. Multi-part sentences are 
+     * reassembled here before the packet is queued. For channels that read lines 
+     * themselves, instead of using an AisLib reader.
+     */
+    protected void receiveLine(String line) {
+        var asm = _assembler;
+        if (asm == null)
+            return;
+        AisPacket packet;
+        synchronized (asm) {
+            packet = asm.add(line, System.currentTimeMillis());
+        }
+        if (packet != null)
+            receivePacket(packet);
+    }
+    
+    
+    
     /**
      * Handle an AIS packet. This is the common packet processing logic used by all channel types.
+     * Called from the ingest worker. DB updates are added to batch.
      */
-    protected void handlePacket(AisPacket packet) {
+    protected void handlePacket(AisPacket packet, UpdateBatch batch) {
+        batch.begin(System.nanoTime());
         try {
+            /* Drop messages already received on this or another channel */
+            var dedup = AisPlugin.dedup;
+            if (dedup != null) {
+                Vdm vdm = packet.getVdm();
+                if (vdm != null && dedup.isDuplicate(vdm.getSixbitString(), System.currentTimeMillis())) {
+                    _duplicates.increment();
+                    return;
+                }
+            }
+            /* Drop low priority position reports under overload */
+            var ovl = _overload;
+            if (ovl != null && ovl.level() > OverloadController.NORMAL) {
+                Vdm vdm = packet.getVdm();
+                if (vdm != null && ovl.shed(vdm.getSixbitString(), System.currentTimeMillis())) {
+                    _shed.increment();
+                    return;
+                }
+            }
             AisMessage msg = packet.getAisMessage();
             _state = State.RUNNING;
+            /* Drop messages outside the area, MMSIs or ship types of the channel */
+            var filter = _filter;
+            if (filter != null && !filter.accept(msg))
+                return;
+            var store = AisPlugin.store;
+            if (store != null) {
+                updateStore(store, msg, batch);
+                _metrics.tick(System.currentTimeMillis());
+                return;
+            }
             AisVessel st = getStn(msg);
-            _messages++;
+            _messages.increment();
          
             int msgId = msg.getMsgId();
+            _metrics.message(msgId);
+            st._lastHeard = System.currentTimeMillis();
+            if (msgId == 1 || msgId == 2 || msgId == 3 || msgId == 5)
+                st._class = AisVessel.CLASS_A;
+            else if (msgId == 18 || msgId == 19 || msgId == 24)
+                st._class = AisVessel.CLASS_B;
+            else if (msgId == 27 && st._class == AisVessel.CLASS_UNKNOWN)
+                st._class = AisVessel.CLASS_LONGRANGE;
             if (msgId == 1 || msgId == 2 || msgId == 3)
                 /* Position */
-                updatePosExtra(st, (AisPositionMessage) msg);
+                updatePosExtra(st, (AisPositionMessage) msg, batch);
             else if (msgId == 5 || msgId == 24)
                 /* Static */
                 updateStatic(st, (AisStaticCommon) msg);
             else if (msgId == 18)
                 /* Simple position */
-                updatePos(st, (IVesselPositionMessage) msg);
+                updatePos(st, (IVesselPositionMessage) msg, batch);
             else if (msgId == 19) {
                 /* Extended position */
                 updateStatic(st, (AisStaticCommon) msg);
-                updatePos(st, (IVesselPositionMessage)msg);
+                updatePos(st, (IVesselPositionMessage)msg, batch);
             }
             else if (msgId == 27) {
                 /* Long range */
-                updatePos(st, (IPositionMessage) msg);
+                updatePos(st, (IPositionMessage) msg, batch);
             }
             
             // Periodic logging - check with minimal overhead
             long currentTime = System.currentTimeMillis();
-            if (currentTime - prev_log_time >= LOG_INTERVAL_MS) {
-               prev_log_time = currentTime; 
-               log.info(null, chId()+"Received "+_messages+" messsages, "+_vessels+" vessels");
-            }
+            _metrics.tick(currentTime);
+            long prev = prev_log_time.get();
+            if (currentTime - prev >= LOG_INTERVAL_MS && prev_log_time.compareAndSet(prev, currentTime))
+               log.info(null, chId()+"Received "+_messages.sum()+" messsages, "+_vessels.sum()+" vessels");
             
         } catch (Throwable e) {
+             _metrics.parseErrors.increment();
              log.warn(null, chId()+"Cannot parse ais message: "+e);
              e.printStackTrace(System.out);
              return;
@@ -254,18 +606,206 @@ public abstract class AisChannel extends Channel
 
  
     /** Start the service */
-    protected long prev_log_time = System.currentTimeMillis();
+    protected final AtomicLong prev_log_time = new AtomicLong(System.currentTimeMillis());
     protected static final long LOG_INTERVAL_MS = 120000; // 2 minutes
     
     public abstract void activate(AprsServerConfig a);
     
     
     
+    /**
+     * Set up the ingest queues and start the workers. To be called by subclasses 
+     * when activating, before the reader is started. 
+     * Config: channel.<id>.queue.size, channel.<id>.queue.policy (drop or block),
+     * channel.<id>.queue.batch.
+     * 
+     * Multi-part sentences read as lines are reassembled in a table of 
+     * channel.<id>.reassembly.slots groups, which expire after channel.<id>.reassembly.timeout ms.
+     * 
+     * Packets may be processed in parallel by channel.<id>.workers worker threads. 
+     * Each worker has its own queue of size channel.<id>.queue.size / workers. 
+     * 
+     * Position reports may be coalesced: Only the latest position of each vessel within 
+     * a time window (channel.<id>.coalesce.ms) is stored, unless the speed or course 
+     * changes more than channel.<id>.coalesce.speed (km/h) or channel.<id>.coalesce.course 
+     * (degrees). 0 ms turns coalescing off. 
+     * 
+     * Which positions are saved to trails is decided by the trail policy, see TrailPolicy.
+     * 
+     * Messages with ids that are not used are dropped before they are decoded, 
+     * unless channel.<id>.prefilter is false.
+     * 
+     * Under overload, low priority position reports are shed, see OverloadController.
+     * 
+     * Messages may be filtered by area, MMSI and ship type, see IngestFilter. 
+     */
+    protected void startIngest() {
+        String id = getIdent();
+        _coalesceTime = _conf.getIntProperty("channel."+id+".coalesce.ms", 0);
+        _coalesceSpeed = _conf.getIntProperty("channel."+id+".coalesce.speed", 5);
+        _coalesceCourse = _conf.getIntProperty("channel."+id+".coalesce.course", 20);
+        _trail = TrailPolicy.create(_conf, id);
+        _visibleMove = _conf.getIntProperty("channel."+id+".trail.visible", 20);
+        _filter = IngestFilter.create(_conf, id);
+        int size = _conf.getIntProperty("channel."+id+".queue.size", 20000);
+        boolean block = "block".equals(_conf.getProperty("channel."+id+".queue.policy", defaultQueuePolicy()));
+        int batch = _conf.getIntProperty("channel."+id+".queue.batch", 256);
+        _prefilter = _conf.getBoolProperty("channel."+id+".prefilter", true);
+        _assembler = new SentenceAssembler(
+            _conf.getIntProperty("channel."+id+".reassembly.slots", 32),
+            _conf.getIntProperty("channel."+id+".reassembly.timeout", 10000), _prefilter);
+        /* Load shedding is opt-in since it drops position reports */
+        int maxLag = _conf.getIntProperty("channel."+id+".overload.lag", 0);
+        int maxFill = _conf.getIntProperty("channel."+id+".overload.fill", 50);
+        int interval = _conf.getIntProperty("channel."+id+".overload.interval", 120);
+        _overload = (maxLag <= 0 ? null : new OverloadController(this, maxLag, maxFill, interval * 1000L));
+        if (_overload != null)
+            _conf.log().info("AisChannel", chId()+"Load shedding is on: Position reports may be throttled "
+                + "to one per "+interval+" s when lag > "+maxLag+" ms or queues > "+maxFill+"% full");
+        int workers = Math.max(1, _conf.getIntProperty("channel."+id+".workers", 1));
+        var ingest = new IngestQueue[workers];
+        for (int i = 0; i < workers; i++) {
+            ingest[i] = new IngestQueue(this, Math.max(1, size / workers), block, batch);
+            ingest[i].start("AisIngest-"+id+(workers > 1 ? "-"+i : ""));
+        }
+        _ingest = ingest;
+        _active.add(this);
+    }
+    
+    
+    
+    /**
+     * Get a generation number for the reader started when activating. Its input 
+     * is processed right away. See acceptLine.
+     */
+    protected synchronized int firstReader() {
+        _candidateGen = -1;
+        return _readerGen = ++_lastGen;
+    }
+    
+    
+    /**
+     * Get a generation number for a new reader when reconfiguring an active channel 
+     * (make-before-break). Input from the current reader is processed until the new 
+     * one delivers valid input. Then the new reader takes over and readerSwitched is 
+     * called. If there is an earlier candidate, it will not take over. 
+     */
+    protected synchronized int candidateReader()
+       { return _candidateGen = ++_lastGen; }
+       
+       
+    /** A candidate reader is stopped: It will not take over. */
+    protected synchronized void cancelCandidate()
+       { _candidateGen = -1; }
+       
+       
+    /**
+     * A candidate reader has taken over. Called with the channel locked. Subclasses 
+     * make the candidate their current reader and return what stops the old one, 
+     * which is run on a separate thread. 
+     */
+    protected Runnable readerSwitched()
+       { return null; }
+       
+       
+    /** Return true if a line from the reader of generation gen is to be processed. */
+    protected boolean acceptLine(int gen, String line)
+       { return gen == _readerGen || _takeOver(gen, SentenceAssembler.validChecksum(line)); }
+       
+       
+    private boolean _takeOver(int gen, boolean valid) {
+        if (!valid || gen != _candidateGen)
+            return false;
+        Runnable retire;
+        synchronized (this) {
+            if (gen != _candidateGen)
+                return gen == _readerGen;
+            _readerGen = gen;
+            _candidateGen = -1;
+            retire = readerSwitched();
+        }
+        log.info(null, chId()+"New connection delivers data, old connection is closed");
+        if (retire != null) {
+            Thread t = new Thread(retire, "AisRetire-"+getIdent());
+            t.setDaemon(true);
+            t.start();
+        }
+        return true;
+    }
+    
+    
+    
+    /**
+     * Queue policy if not configured: "drop" or "block". 
+     */
+    protected String defaultQueuePolicy()
+       { return "drop"; }
+    
+    
+    
+    /**
+     * Stop the ingest workers. To be called by subclasses when deactivating, 
+     * after the reader is stopped. 
+     */
+    protected void stopIngest() {
+        _active.remove(this);
+        var ingest = _ingest;
+        if (ingest != null)
+            for (IngestQueue q : ingest)
+                q.stop();
+    }
+    
+    
+    
     /** Stop the service */
     public abstract void deActivate();
     
     
     
+    /**
+     * Metrics of all active AIS channels in Prometheus text format.
+     */
+    public static String prometheusMetrics() {
+        StringBuilder sb = new StringBuilder(4096);
+        IngestMetrics.writeHeaders(sb);
+        sb.append("# HELP ais_vessels_total Vessels added to the DB.\n");
+        sb.append("# TYPE ais_vessels_total counter\n");
+        sb.append("# HELP ais_vessels Vessels added by the channel and not expired.\n");
+        sb.append("# TYPE ais_vessels gauge\n");
+        sb.append("# HELP ais_queue_depth Packets waiting to be processed.\n");
+        sb.append("# TYPE ais_queue_depth gauge\n");
+        sb.append("# HELP ais_queue_dropped_total Packets dropped because the queue was full.\n");
+        sb.append("# TYPE ais_queue_dropped_total counter\n");
+        sb.append("# HELP ais_skipped_total Messages of unused types dropped before decoding.\n");
+        sb.append("# TYPE ais_skipped_total counter\n");
+        sb.append("# HELP ais_shed_total Position reports dropped under overload.\n");
+        sb.append("# TYPE ais_shed_total counter\n");
+        sb.append("# HELP ais_shed_level Load shedding level: 0 normal, 1 moored, 2 class B.\n");
+        sb.append("# TYPE ais_shed_level gauge\n");
+        sb.append("# HELP ais_filtered_total Messages dropped by the ingest filter, per rule.\n");
+        sb.append("# TYPE ais_filtered_total counter\n");
+        for (AisChannel ch : _active) {
+            var cnf = new JsConfig();
+            ch.setCounters(cnf);
+            String lbl = "{channel=\""+ch.getIdent()+"\"} ";
+            ch._metrics.writePrometheus(sb, ch.getIdent());
+            sb.append("ais_vessels_total").append(lbl).append(cnf.vessels).append('\n');
+            sb.append("ais_vessels").append(lbl).append(cnf.live).append('\n');
+            sb.append("ais_queue_depth").append(lbl).append(cnf.queued).append('\n');
+            sb.append("ais_queue_dropped_total").append(lbl).append(cnf.dropped).append('\n');
+            sb.append("ais_skipped_total").append(lbl).append(cnf.skipped).append('\n');
+            sb.append("ais_shed_total").append(lbl).append(cnf.shed).append('\n');
+            sb.append("ais_shed_level").append(lbl).append(cnf.shedLevel).append('\n');
+            if (cnf.filtered != null)
+                for (var e : cnf.filtered.entrySet())
+                    sb.append("ais_filtered_total{channel=\"").append(ch.getIdent()).append("\",rule=\"")
+                      .append(e.getKey()).append("\"} ").append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+    
+    
+    
     public String getShortDescr()
        { return "ais"+_chno; }
  
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+
+/**
+ * Thread that reads lines of NMEA text from an input stream and gives them
+ * to a handler. The stream is opened by a Source. If a reconnect interval is 
+ * given, the stream is opened again when it ends or fails, e.g. for TCP. 
+ */
+
+public class AisLineReader extends Thread
+{
+    private static final int CONNECT_TIMEOUT = 10000;
+    
+    /** Opens the input stream. */
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+    
+    
+    private final Source _src;
+    private final long _reconnect;
+    private final Consumer<String> _handler;
+    private volatile InputStream _in;
+    private volatile boolean _stopped = false;
+    private volatile boolean _connected = false;
+    private volatile long _reconnects = 0;
+
+
+    /**
+     * Constructor. 
+     * @param reconnect Time (ms) to wait before opening the stream again. 0: Stop when it ends.
+     */
+    public AisLineReader(Source src, long reconnect, Consumer<String> handler, String name) {
+        super(name);
+        setDaemon(true);
+        _src = src;
+        _reconnect = reconnect;
+        _handler = handler;
+    }
+    
+    
+    /** Read an open stream until it ends. */
+    public AisLineReader(InputStream in, Consumer<String> handler, String name) {
+        this(() -> in, 0, handler, name);
+        _in = in;
+    }
+       
+       
+    /** Source that connects to a TCP server. */
+    public static Source tcp(String host, int port) {
+        return () -> {
+            Socket sock = new Socket();
+            try {
+                sock.setKeepAlive(true);
+                sock.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                return sock.getInputStream();
+            }
+            catch (IOException e) {
+                sock.close();
+                throw e;
+            }
+        };
+    }
+    
+    
+    public boolean isConnected()
+       { return _connected; }
+       
+    /** Number of times the stream ended or could not be opened. */
+    public long reconnects()
+       { return _reconnects; }
+
+
+
+    public void run() {
+        while (!_stopped) {
+            try {
+                _in = _src.open();
+                if (_stopped)
+                    break;
+                _connected = true;
+                BufferedReader rd = new BufferedReader(new InputStreamReader(_in, StandardCharsets.US_ASCII));
+                String line;
+                while (!_stopped && (line = rd.readLine()) != null)
+                    if (line.length() > 0)
+                        _handler.accept(line);
+            }
+            catch (IOException e) {
+                if (!_stopped)
+                    AisPlugin.log.warn(null, getName()+": "+e);
+            }
+            finally {
+                _connected = false;
+                _close();
+            }
+            if (_stopped || _reconnect <= 0)
+                break;
+            _reconnects++;
+            try {
+                Thread.sleep(_reconnect);
+            }
+            catch (InterruptedException e) {
+                if (_stopped)
+                    break;
+            }
+        }
+    }
+    
+    
+    private void _close() {
+        InputStream in = _in;
+        if (in != null) {
+            try { in.close(); }
+            catch (IOException e) {}
+        }
+    }
+
+
+
+    /** Stop reading. Closes the input stream. */
+    public void stopReader() {
+        _stopped = true;
+        _close();
+        interrupt();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package no.polaric.ais;
+
+
+/**
+ * Read fields directly from the armored (6-bit ASCII) payload of an AIS
+ * sentence, without decoding the whole message.
+ */
+
+public class AisPayload
+{
+    /**
+     * Value of an armored payload character. -1 if not valid.
+     */
+    public static int sixbit(int c) {
+        int v = c - 48;
+        if (v > 40)
+            v -= 8;
+        return (v < 0 || v > 63 ? -1 : v);
+    }
+    
+    
+    
+    /**
+     * Get the MMSI (user id) from the payload: Bits 8-37. 
+     * @return MMSI or -1 if the payload is too short or not valid.
+     */
+    public static long mmsi(CharSequence payload) {
+        if (payload == null || payload.length() < 7)
+            return -1;
+        long id = 0;
+        for (int i = 1; i < 7; i++) {
+            int v = sixbit(payload.charAt(i));
+            if (v < 0)
+                return -1;
+            id = (id << 6) | v;
+        }
+        /* 36 bits read, from bit 6. Remove the repeat indicator and the 4 bits after the MMSI */
+        return (id >> 4) & 0x3FFFFFFFL;
+    }
+    
+    
+    
+    /* Message ids handled by AisChannel */
+    private static final long SUPPORTED = 
+        (1L << 1) | (1L << 2) | (1L << 3) | (1L << 5) | (1L << 18) | (1L << 19) | (1L << 24) | (1L << 27);
+    
+    /** Return true if messages with this id are used by the plugin. */
+    public static boolean supported(int msgId) {
+        return msgId >= 0 && msgId < 64 && ((SUPPORTED >>> msgId) & 1) != 0;
+    }
+    
+    
+    
+    /** 
+     * Get the message id from the first VDM/VDO sentence in buf[0..len-1], for lines 
+     * that are not yet converted to text. 
+     * @return message id or -1 if not found, if the sentence is not a complete 
+     * (single fragment) message or if its checksum is not valid. 
+     */
+    public static int singleMsgId(byte[] buf, int len) {
+        for (int i = 0; i + 6 < len; i++) {
+            byte c = buf[i];
+            if ((c == '!' || c == '$') && buf[i+3] == 'V' && buf[i+4] == 'D' && buf[i+6] == ',') {
+                int f = 0;
+                for (int j = i + 6; j < len; j++)
+                    if (buf[j] == ',' && ++f == 5)
+                        return (j + 1 < len && buf[i+7] == '1' && buf[i+9] == '1' && _validChecksum(buf, i, len) 
+                                   ? sixbit(buf[j + 1]) : -1);
+                return -1;
+            }
+        }
+        return -1;
+    }
+    
+    
+    
+    /* Check the NMEA checksum of the sentence starting at buf[start], as SentenceAssembler.validChecksum */
+    private static boolean _validChecksum(byte[] buf, int start, int len) {
+        int sum = 0, i = start + 1;
+        while (i < len && buf[i] != '*')
+            sum ^= buf[i++];
+        if (i + 2 >= len)
+            return false;
+        int hi = Character.digit(buf[i + 1], 16);
+        int lo = Character.digit(buf[i + 2], 16);
+        return hi >= 0 && lo >= 0 && ((hi << 4) | lo) == sum;
+    }
+}
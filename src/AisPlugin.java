@@ -4,6 +4,7 @@ import no.polaric.core.*;
 import no.polaric.core.auth.*;
 import no.polaric.aprsd.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 
@@ -11,6 +12,33 @@ public class AisPlugin implements PluginManager.Plugin
 {
       private AprsServerConfig _conf; 
       static Logfile log;
+      
+      /* Index of AIS vessels, shared by all AIS channels */
+      static final MmsiIndex index = new MmsiIndex(16384);
+      
+      /* Filter for duplicate messages from overlapping channels. Null if not used */
+      static DuplicateFilter dedup;
+      
+      /* Names and callsigns of vessels, shared by all AIS channels */
+      static final TextPool texts = new TextPool(16384);
+      
+      /* Spatial index of vessel positions. Cells are 0.2 degrees */
+      static final VesselGrid<AisVessel> grid = new VesselGrid<AisVessel>(0.2, VesselGrid.VESSELS);
+      
+      /* Columnar vessel store, used instead of AisVessel objects if ais.store is "columnar". Null if not used */
+      static VesselStore store;
+      
+      /* Stream of vessel changes for map clients. Null if not used */
+      static DeltaStream delta;
+      
+      /* Dead reckoning of vessel positions. Null if not used */
+      static PositionProjector projector;
+      
+      /* Periodic snapshot of the vessel table. Null if not used */
+      private VesselSnapshot _snapshot;
+      
+      /* Periodic tasks: Snapshot, expiry of vessels and delta stream */
+      private ScheduledExecutorService _sched;
      
      
       /** Start the plugin  */
@@ -22,10 +50,44 @@ public class AisPlugin implements PluginManager.Plugin
          try {
            conf.log().info("AisPlugin", "Activate plugin...");
            _conf = conf;
+           int dwindow = conf.getIntProperty("ais.dedup.window", 0);
+           if (dwindow > 0)
+              dedup = new DuplicateFilter(dwindow, conf.getIntProperty("ais.dedup.size", 65536));
+           if ("columnar".equals(conf.getProperty("ais.store", "objects"))) {
+              store = new VesselStore(conf, conf.getIntProperty("ais.store.capacity", 16384));
+              log.info(null, "Vessels are kept in columnar store");
+           }
            _conf.getChanManager().addClass("AIS-TCP", "no.polaric.ais.TcpAisChannel");
            _conf.getChanManager().addClass("AIS-SERIAL", "no.polaric.ais.SerialAisChannel");
+           _conf.getChanManager().addClass("AIS-FILE", "no.polaric.ais.FileAisChannel");
+           _conf.getChanManager().addClass("AIS-UDP", "no.polaric.ais.UdpAisChannel");
            AisChannel.classInit();
+           
+           _sched = Executors.newSingleThreadScheduledExecutor(r -> {
+               Thread t = new Thread(r, "AisScheduler");
+               t.setDaemon(true);
+               return t;
+           });
+           String sfile = conf.getProperty("ais.snapshot.file", "");
+           if (!sfile.isEmpty()) {
+              _snapshot = new VesselSnapshot(sfile);
+              loadSnapshot();
+              int interval = conf.getIntProperty("ais.snapshot.interval", 300);
+              _sched.scheduleWithFixedDelay(this::saveSnapshot, interval, interval, TimeUnit.SECONDS);
+           }
+           int einterval = conf.getIntProperty("ais.expire.interval", 60);
+           if (einterval > 0)
+              _sched.scheduleWithFixedDelay(new VesselExpiry(conf), einterval, einterval, TimeUnit.SECONDS);
+           int ptick = conf.getIntProperty("ais.projection.tick", 1000);
+           if (ptick > 0)
+              projector = new PositionProjector(ptick, conf.getIntProperty("ais.projection.max", 300) * 1000L);
+           int dinterval = conf.getIntProperty("ais.delta.interval", 0);
+           if (dinterval > 0) {
+              delta = new DeltaStream(conf.getIntProperty("ais.delta.frames", 30));
+              _sched.scheduleAtFixedRate(delta, dinterval, dinterval, TimeUnit.SECONDS);
+           }
            AuthInfo.addService("ais");
+           new AisApi(conf).start();
         }
         catch (Exception e) {
            _conf.log().error("AisPlugin", ""+e);
@@ -34,6 +96,32 @@ public class AisPlugin implements PluginManager.Plugin
       
       
             
+      private void loadSnapshot() {
+         try {
+            long t = System.currentTimeMillis();
+            int n = (store != null ? _snapshot.load(store) : _snapshot.load(_conf, index));
+            log.info(null, "Restored "+n+" vessels from snapshot in "+(System.currentTimeMillis()-t)+" ms");
+         }
+         catch (Exception e) {
+            log.warn(null, "Cannot load vessel snapshot: "+e);
+         }
+      }
+      
+      
+      private void saveSnapshot() {
+         try {
+            if (store != null)
+               _snapshot.save(store);
+            else
+               _snapshot.save(index.values());
+         }
+         catch (Exception e) {
+            log.warn(null, "Cannot write vessel snapshot: "+e);
+         }
+      }
+      
+      
+      
       // FIXME
       public boolean isActive()
        { return true; }
@@ -43,6 +131,12 @@ public class AisPlugin implements PluginManager.Plugin
       /**  Stop the plugin */ 
       public void deActivate() {
          _conf.log().info("AisPlugin", "Deactivate plugin");
+         if (_sched != null) {
+            _sched.shutdownNow();
+            _sched = null;
+         }
+         if (_snapshot != null)
+            saveSnapshot();
       }
        
        
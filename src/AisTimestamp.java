@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package no.polaric.ais;
+
+
+/**
+ * Time of AIS position reports. A report carries only the UTC second of the
+ * position fix. The full time is found from the time of reception: It is the 
+ * latest time with that second that is not more than MAX_AHEAD ms after reception. 
+ * Computed on epoch millis, without Calendar.
+ */
+
+public class AisTimestamp
+{
+    /** How much a report may be ahead of the local clock */
+    public static final long MAX_AHEAD = 3000;
+    
+    
+    /**
+     * Resolve the time of a position report. 
+     * @param now Time of reception (epoch millis). 
+     * @param zsec UTC second from the report. 60 and above means that it is not available 
+     *   (60), manual input (61), dead reckoning (62) or positioning system inoperative (63). 
+     * @return Time of the report (epoch millis). now if the second is not available. 
+     */
+    public static long resolve(long now, int zsec) {
+        if (zsec < 0 || zsec >= 60)
+            return now;
+        long t = now - Math.floorMod(now, 60000L) + zsec * 1000L + Math.floorMod(now, 1000L);
+        if (t > now + MAX_AHEAD)
+            t -= 60000;
+        else if (t + 60000 <= now + MAX_AHEAD)
+            /* Just ahead of the clock, in the next minute */
+            t += 60000;
+        return t;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+
+
+/**
+ * Text and tag for AIS ship types (0-255) and text for nav status (0-15), 
+ * computed once into tables. Shared by AisVessel and AisChannel.
+ */
+
+public class AisTypes
+{
+    private static final String[] TYPE_TEXT = new String[256];
+    private static final String[] TYPE_TAG = new String[256];
+    private static final String[] NAV_TEXT = new String[16];
+    
+    static {
+        for (int i = 0; i < 256; i++) {
+            TYPE_TEXT[i] = _typeText(i);
+            TYPE_TAG[i] = _typeTag(i);
+        }
+        for (int i = 0; i < 16; i++)
+            NAV_TEXT[i] = _navText(i);
+    }
+    
+    
+    /** Text for ship type. */
+    public static String typeText(int type)
+       { return (type < 0 || type > 255 ? "Undefined" : TYPE_TEXT[type]); }
+       
+    /** Tag for ship type. Null if the type has no specific tag. */
+    public static String typeTag(int type)
+       { return (type < 0 || type > 255 ? null : TYPE_TAG[type]); }
+       
+    /** Text for nav status. */
+    public static String navText(int st)
+       { return (st < 0 || st > 15 ? "Undefined" : NAV_TEXT[st]); }
+       
+    
+    
+    private static String _typeText(int type) {
+        if (type / 10 == 2)
+           return "WIG (US)"; 
+        
+        /* 3x = Engaged in */
+        else if (type == 30)
+           return "Fishing";
+        else if (type == 31 || type == 32)
+           return "Towing";
+        else if (type == 33 || type == 34)
+           return "Underwater ops";
+        else if (type == 35)
+           return "Military ops";
+        else if (type == 36)
+           return "Sailing"; 
+        else if (type == 37)
+           return "Recreational";
+
+        /* 5x = Special */
+        else if (type == 50)
+           return "Pilot"; 
+        else if (type == 51)
+           return "Search & rescue";
+        else if (type == 54)
+           return "Commercial response";
+        else if (type == 55)
+           return "Law enforcement";
+        else if (type == 56 || type == 57)
+           return "Assignment.."; 
+        else if (type == 58)
+           return "Medical/public safety";
+        else if (type / 10 == 5)
+           return "Special..";
+           
+        else if (type == 41 || type == 61)
+           return "Passenger < 12 pas";
+        else if (type == 43 || type == 63)
+           return "Ferry < 150 pas";
+        else if (type == 44 || type == 64)
+           return "Ferry >= 150 pas"; 
+        else if (type / 10 == 4)
+           return "HS passenger";
+        else if (type / 10 == 6)
+           return "Passenger";
+        
+        else if (type / 10 == 7)
+           return "Cargo";
+        else if (type / 10 == 8)
+           return "Tanker";
+        else if (type / 10 == 9)
+           return "Other";
+        else return "Undefined";
+    }
+    
+    
+    private static String _typeTag(int type) {
+       int typeCategory = type / 10;
+       if (type == 51)
+          return "AIS.SAR";
+       else if (type == 55)
+          return "AIS.law";
+       else if (type == 58)
+          return "AIS.medical";
+       else if (typeCategory == 4 || typeCategory == 6)
+          return "AIS.passenger";
+       else if (typeCategory == 5)
+          return "AIS.special";
+       else if (typeCategory == 7)
+          return "AIS.cargo";
+       else if (typeCategory == 8)
+          return "AIS.tanker";
+       return null;
+    }
+    
+    
+    private static String _navText(int st) {
+      switch (st) {
+         case 0: return "Under way using engine"; 
+         case 1: return "At anchor";
+         case 2: return "Not under command";
+         case 3: return "Restricted manoeuvrability";
+         case 4: return "Constrained by her draught";
+         case 5: return "Moore";
+         case 6: return "Aground"; 
+         case 7: return "Engaged in fishing";
+         case 8: return "Under way sailing";
+         case 14: return "AIS-SART (active)";
+         default: return "Undefined";
+      }
+    }
+}
@@ -50,18 +50,68 @@ public class AisVessel extends TrackerPoint implements Serializable, Cloneable
 
 
      private long      _ident;
+     private String    _sident;
      private String    _name;
      private String    _callsign; 
      private int       _type = 0;
      private int       _navstatus = -1; 
      private String    _source;
+     transient String  _descr;
+     
+     /* Cell in the plugin's VesselGrid, -1 if not there */
+     transient int     _gridCell = -1;
+     
+     /* Last report, see Report. Null if the vessel has no position */
+     transient volatile Report _report;
+     
+     /* Class of vessel, time of last message and channel that added it, for expiry */
+     public static final byte CLASS_UNKNOWN = 0, CLASS_A = 1, CLASS_B = 2, CLASS_LONGRANGE = 3;
+     transient byte    _class = CLASS_UNKNOWN;
+     transient volatile long _lastHeard;
+     transient AisChannel _creator;
+     
+     /* Removed from the index by VesselExpiry. The DB removal follows, see VesselExpiry.removeFromDB */
+     transient volatile boolean _removed;
+     transient boolean _dbRemoved;
+     
+     /* Last report kept by the trail policy */
+     transient long    _trailTime;
+     transient double  _trailLat, _trailLon;
+     transient int     _trailSpeed, _trailCourse, _trailCog;
+     
+     
+     /**
+      * Position, speed, heading and course over ground (-1 if not known) of the last 
+      * report, published as one object by setMotion. The delta stream and the position 
+      * projector read it without locking the vessel, and get values of the same report. 
+      */
+     static final class Report {
+        final long time; 
+        final double lat, lon;
+        final int speed, course, cog;
+        
+        Report(long t, LatLng pos, int sp, int crs, int cg)
+           { time = t; lat = pos.getLat(); lon = pos.getLng(); speed = sp; course = crs; cog = cg; }
+     }
      
      
      public AisVessel(LatLng p, long id)
-       { super(p); _ident = id; }
+       { super(p); _ident = id; _sident = "MMSI:"+id; }
+       
+     public long getMmsi()
+       { return _ident; }
+       
+     /** Set speed, heading and course over ground, and publish them with the position as a Report. */
+     void setMotion(int speed, int course, int cog) {
+        setSpeed(speed);
+        setCourse(course);
+        LatLng pos = getPosition();
+        Date t = getUpdated();
+        _report = (pos == null || t == null ? null : new Report(t.getTime(), pos, speed, course, cog));
+     }
        
      public boolean hasName()
-       { return _name != null && _name.length() > 0; }
+       { String n = getName(); return n != null && n.length() > 0; }
        
      public String getName()
        { return _name; }
@@ -70,22 +120,22 @@ public class AisVessel extends TrackerPoint implements Serializable, Cloneable
        { _name = n; }
      
      public boolean hasCallsign()
-       { return _callsign != null && _callsign.length() > 0; }
+       { String cs = getCallsign(); return cs != null && cs.length() > 0; }
        
      public String getCallsign()
        { return _callsign; }
        
      public void setCallsign(String cs)
-       { _callsign = cs; }
+       { _callsign = cs; _descr = null; }
            
      @Override public String getIdent()
-        { return "MMSI:"+_ident; }
+        { return _sident; }
         
      @Override public String _getDisplayId() { 
          if (hasName()) 
-            return _name;
+            return getName();
          else if (hasCallsign()) 
-            return _callsign; 
+            return getCallsign(); 
          else return getIdent();
       } 
    
@@ -93,30 +143,39 @@ public class AisVessel extends TrackerPoint implements Serializable, Cloneable
         if (hasDescr())
            return super.getDescr();
         else
-           return (_callsign != null ? _callsign+", " : "") + getTypeText(); 
+        { 
+           /* Cached until callsign or type changes */
+           String d = _descr;
+           if (d == null) {
+              String cs = getCallsign();
+              _descr = d = (cs != null ? cs+", " : "") + getTypeText(); 
+           }
+           return d;
+        }
      }
      
      public int getType() 
         { return _type; }
         
      public void setType(int t)
-        { _type = t; }
+        { _type = t; _descr = null; }
         
      public String getTypeText()
-        { return type2text(_type); }
+        { return type2text(getType()); }
         
      public int getNavStatus() 
         { return _navstatus; }
       
      public String getNavStatusText()
-        { return navstatus2text(_navstatus); }
+        { return navstatus2text(getNavStatus()); }
         
      public void setNavStatus (int s)
         { _navstatus = s; }
         
 
+    /* Vessels restored from a snapshot have no source until heard again */
     @Override public Source getSource()
-       { return _conf.getChanManager().get(_source); }
+       { return (_source == null ? null : _conf.getChanManager().get(_source)); }
        
        
     @Override public String getSourceId()
@@ -135,74 +194,9 @@ public class AisVessel extends TrackerPoint implements Serializable, Cloneable
     /** 
      * Get text for ship type.
      */
-    public static String type2text(int type) {
-
-        if (type / 10 == 2)
-           return "WIG (US)"; 
-        
-        /* 3x = Engaged in */
-        else if (type == 30)
-           return "Fishing";
-        else if (type == 31 || type == 32)
-           return "Towing";
-        else if (type == 33 || type == 34)
-           return "Underwater ops";
-        else if (type == 35)
-           return "Military ops";
-        else if (type == 36)
-           return "Sailing"; 
-        else if (type == 37)
-           return "Recreational";
-
-        /* 5x = Special */
-        else if (type == 50)
-           return "Pilot"; 
-        else if (type == 51)
-           return "Search & rescue";
-        else if (type == 54)
-           return "Commercial response";
-        else if (type == 55)
-           return "Law enforcement";
-        else if (type == 56 || type == 57)
-           return "Assignment.."; 
-        else if (type == 58)
-           return "Medical/public safety";
-        else if (type / 10 == 5)
-           return "Special..";
-           
-        else if (type == 41 || type == 61)
-           return "Passenger < 12 pas";
-        else if (type == 43 || type == 63)
-           return "Ferry < 150 pas";
-        else if (type == 44 || type == 64)
-           return "Ferry >= 150 pas"; 
-        else if (type / 10 == 4)
-           return "HS passenger";
-        else if (type / 10 == 6)
-           return "Passenger";
-        
-        else if (type / 10 == 7)
-           return "Cargo";
-        else if (type / 10 == 8)
-           return "Tanker";
-        else if (type / 10 == 9)
-           return "Other";
-        else return "Undefined";
-    }
+    public static String type2text(int type)
+       { return AisTypes.typeText(type); }
  
-    public static String navstatus2text(int st) {
-      switch (st) {
-         case 0: return "Under way using engine"; 
-         case 1: return "At anchor";
-         case 2: return "Not under command";
-         case 3: return "Restricted manoeuvrability";
-         case 4: return "Constrained by her draught";
-         case 5: return "Moore";
-         case 6: return "Aground"; 
-         case 7: return "Engaged in fishing";
-         case 8: return "Under way sailing";
-         case 14: return "AIS-SART (active)";
-         default: return "Undefined";
-      }
-    } 
+    public static String navstatus2text(int st)
+       { return AisTypes.navText(st); }
 }
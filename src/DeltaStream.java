@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import no.polaric.aprsd.point.*;
+
+
+/**
+ * Stream of vessel changes for map clients, so they do not need to fetch the 
+ * info of all vessels to see them move. Run periodically by the plugin: Each 
+ * tick compares the vessels with what was last sent, and makes a frame with 
+ * the vessels that changed. Positions are quantized, so moves below the 
+ * resolution are not sent. The last frames are kept, so a client can ask for 
+ * the frames after the last one it has seen. A client that is new or too far 
+ * behind gets a key frame with all vessels instead.
+ * 
+ * Frames are only made while there are clients: The stream starts at the first 
+ * request and goes idle, dropping what it has, when there have been no requests 
+ * for as many ticks as frames are kept. 
+ * 
+ * Binary format, big endian. A frame is: 
+ *   int length (of the rest of the frame), byte kind (0 delta, 1 key), 
+ *   varint seq, long time (ms), records until the end of the frame. 
+ * A record is: 
+ *   varint mmsi, byte flags (1 position, 2 static, 4 removed, 8 absolute position), 
+ *   if position: lat, lon in units of 1e-5 degrees, either absolute (int) or as 
+ *     zigzag varint difference from the last position sent, then byte speed (km/h), 
+ *     byte course (2 degree units) and byte nav status, 255 if not known, 
+ *   if static: byte ship type, name and callsign as byte length and ASCII text. 
+ */
+
+public class DeltaStream implements Runnable
+{
+    public static final int F_POS = 1, F_STATIC = 2, F_REMOVED = 4, F_ABS = 8;
+    public static final int DELTA = 0, KEY = 1;
+    private static final int UNKNOWN = 255;
+    private static final double QUANT = 1e5;
+    
+    private static class Frame {
+        final long seq;
+        final byte[] data;
+        Frame(long s, byte[] d) { seq = s; data = d; }
+    }
+    
+    
+    /* Growable output buffer */
+    private static class Out {
+        byte[] buf = new byte[4096];
+        int len = 0;
+        
+        void reset()
+           { len = 0; }
+           
+        void b(int x) {
+            if (len == buf.length)
+                buf = Arrays.copyOf(buf, len * 2);
+            buf[len++] = (byte) x;
+        }
+        
+        void i32(int x) 
+           { b(x >>> 24); b(x >>> 16); b(x >>> 8); b(x); }
+           
+        void i64(long x)
+           { i32((int) (x >>> 32)); i32((int) x); }
+        
+        void varint(long x) {
+            while ((x & ~0x7fL) != 0) {
+                b((int) (x & 0x7f) | 0x80);
+                x >>>= 7;
+            }
+            b((int) x);
+        }
+        
+        void zigzag(int x)
+           { varint(((x << 1) ^ (x >> 31)) & 0xffffffffL); }
+        
+        void text(String s) {
+            int n = (s == null ? 0 : Math.min(255, s.length()));
+            b(n);
+            for (int i = 0; i < n; i++)
+                b(s.charAt(i) & 0x7f);
+        }
+        
+        void patch32(int off, int x) {
+            buf[off] = (byte) (x >>> 24); buf[off+1] = (byte) (x >>> 16);
+            buf[off+2] = (byte) (x >>> 8); buf[off+3] = (byte) x;
+        }
+    }
+    
+    
+    /* What was last sent, per vessel. Columns indexed by slot of _index */
+    private final MmsiSlots _index = new MmsiSlots(1024);
+    private int[]     _lat = new int[1024], _lon = new int[1024], _seen = new int[1024];
+    private byte[]    _speed = new byte[1024], _course = new byte[1024], _nav = new byte[1024], _type = new byte[1024];
+    private boolean[] _hasPos = new boolean[1024];
+    private String[]  _name = new String[1024], _callsign = new String[1024];
+    
+    private final int _maxFrames;
+    private final ArrayDeque<Frame> _frames = new ArrayDeque<Frame>();
+    private final Out _out = new Out();
+    private long _seq = 0;
+    private int _tick = 0;
+    private byte[] _key;
+    private long _keySeq = -1;
+    private boolean _active = false;
+    private int _idle = 0;
+    
+    
+    /**
+     * Constructor.
+     * @param frames Number of frames to keep for clients that are behind.
+     */
+    public DeltaStream(int frames)
+       { _maxFrames = Math.max(1, frames); }
+    
+    
+    /** Sequence number of the last frame. */
+    public synchronized long seq()
+       { return _seq; }
+       
+       
+    /** Size in bytes of the last frame. */
+    public synchronized int lastSize()
+       { return _frames.isEmpty() ? 0 : _frames.peekLast().data.length; }
+       
+       
+    
+    /**
+     * Make the next frame, if there are clients. 
+     */
+    public void run() {
+        try {
+            synchronized (this) {
+                if (!_active)
+                    return;
+                if (++_idle > _maxFrames) {
+                    _stop();
+                    return;
+                }
+                tick(System.currentTimeMillis());
+            }
+        }
+        catch (Exception e) {
+            AisPlugin.log.warn(null, "Delta stream: "+e);
+        }
+    }
+    
+    
+    
+    /**
+     * Compare the vessels with what was last sent and add a frame with the changes.
+     */
+    public synchronized void tick(long now) {
+        _tick++;
+        _seq++;
+        _begin(DELTA, now);
+        var store = AisPlugin.store;
+        if (store != null) {
+            synchronized (store) {
+                for (int s = 0; s < store.top(); s++)
+                    if (store.mmsi(s) >= 0)
+                        _visit(store.mmsi(s), store.hasPos(s), store.lat(s), store.lon(s), store.speed(s), 
+                            store.course(s), store.navStatus(s), store.type(s), store.name(s), store.callsign(s));
+            }
+        }
+        else
+            for (AisVessel v : AisPlugin.index.values()) {
+                /* Position, speed and course of one report, see AisVessel.Report */
+                AisVessel.Report r = v._report;
+                _visit(v.getMmsi(), r != null, r == null ? 0 : r.lat, r == null ? 0 : r.lon, 
+                    r == null ? v.getSpeed() : r.speed, r == null ? v.getCourse() : r.course, 
+                    v.getNavStatus(), v.getType(), v.getName(), v.getCallsign());
+            }
+        
+        /* Vessels not seen in this tick are gone */
+        for (int s = 0; s < _index.top(); s++)
+            if (_index.mmsi(s) >= 0 && _seen[s] != _tick) {
+                _out.varint(_index.mmsi(s));
+                _out.b(F_REMOVED);
+                _remove(s);
+            }
+            
+        _frames.addLast(new Frame(_seq, _end()));
+        while (_frames.size() > _maxFrames)
+            _frames.removeFirst();
+    }
+    
+    
+    
+    /**
+     * Return the frames after the given sequence number, concatenated. If they 
+     * are not all kept, or seq is 0, return a key frame. Empty if there is nothing new.
+     */
+    public synchronized byte[] since(long seq) {
+        _request();
+        if (seq == _seq && seq > 0)
+            return new byte[0];
+        Frame first = _frames.peekFirst();
+        if (seq <= 0 || first == null || seq < first.seq - 1 || seq > _seq)
+            return keyFrame();
+        int n = 0;
+        for (Frame f : _frames)
+            if (f.seq > seq)
+                n += f.data.length;
+        byte[] res = new byte[n];
+        n = 0;
+        for (Frame f : _frames)
+            if (f.seq > seq) {
+                System.arraycopy(f.data, 0, res, n, f.data.length);
+                n += f.data.length;
+            }
+        return res;
+    }
+    
+    
+    
+    /**
+     * Return a key frame: All vessels as last sent, with absolute positions and 
+     * static data. It is made once per tick, when it is asked for.
+     */
+    public synchronized byte[] keyFrame() {
+        _request();
+        if (_key != null && _keySeq == _seq)
+            return _key;
+        _begin(KEY, System.currentTimeMillis());
+        for (int s = 0; s < _index.top(); s++) {
+            if (_index.mmsi(s) < 0)
+                continue;
+            _out.varint(_index.mmsi(s));
+            _out.b(F_STATIC | (_hasPos[s] ? F_POS | F_ABS : 0));
+            if (_hasPos[s])
+                _writePos(s, _lat[s], _lon[s], true);
+            _writeStatic(s);
+        }
+        _key = _end();
+        _keySeq = _seq;
+        return _key;
+    }
+    
+    
+    
+    /* 
+     * A client asks for frames. If the stream is idle, compare with nothing to get 
+     * the current state. That frame is not kept, so clients with older sequence 
+     * numbers get a key frame. 
+     */
+    private void _request() {
+        _idle = 0;
+        if (_active)
+            return;
+        _active = true;
+        tick(System.currentTimeMillis());
+        _frames.clear();
+    }
+    
+    
+    /* Go idle and drop what was sent */
+    private void _stop() {
+        _active = false;
+        for (int s = 0; s < _index.top(); s++)
+            _name[s] = _callsign[s] = null;
+        _index.clear();
+        _frames.clear();
+        _key = null;
+    }
+    
+    
+    
+    private void _begin(int kind, long time) {
+        _out.reset();
+        _out.i32(0);
+        _out.b(kind);
+        _out.varint(_seq);
+        _out.i64(time);
+    }
+    
+    
+    private byte[] _end() {
+        _out.patch32(0, _out.len - 4);
+        return Arrays.copyOf(_out.buf, _out.len);
+    }
+    
+    
+    
+    /* Compare a vessel with what was last sent, write a record if changed */
+    private void _visit(long mmsi, boolean pos, double lat, double lon, int speed, int course, 
+                        int nav, int type, String name, String callsign) 
+    {
+        int s = _index.get(mmsi);
+        boolean added = (s < 0);
+        if (added)
+            s = _add(mmsi);
+        _seen[s] = _tick;
+        
+        int qlat = 0, qlon = 0;
+        byte qspeed = (byte) (speed < 0 ? UNKNOWN : Math.min(speed, 254));
+        byte qcourse = (byte) (course < 0 ? UNKNOWN : (course % 360) / 2);
+        byte qnav = (byte) (nav < 0 || nav > 15 ? UNKNOWN : nav);
+        int flags = 0;
+        if (pos) {
+            qlat = (int) Math.round(lat * QUANT);
+            qlon = (int) Math.round(lon * QUANT);
+            if (!_hasPos[s])
+                flags = F_POS | F_ABS;
+            else if (qlat != _lat[s] || qlon != _lon[s] || qspeed != _speed[s] || qcourse != _course[s] || qnav != _nav[s])
+                flags = F_POS;
+        }
+        if (added || (byte) type != _type[s] || !Objects.equals(name, _name[s]) || !Objects.equals(callsign, _callsign[s]))
+            flags |= F_STATIC;
+        if (flags == 0)
+            return;
+            
+        _out.varint(mmsi);
+        _out.b(flags);
+        if ((flags & F_POS) != 0) {
+            _speed[s] = qspeed;
+            _course[s] = qcourse;
+            _nav[s] = qnav;
+            _writePos(s, qlat, qlon, (flags & F_ABS) != 0);
+            _lat[s] = qlat;
+            _lon[s] = qlon;
+            _hasPos[s] = true;
+        }
+        if ((flags & F_STATIC) != 0) {
+            _type[s] = (byte) type;
+            _name[s] = name;
+            _callsign[s] = callsign;
+            _writeStatic(s);
+        }
+    }
+    
+    
+    private void _writePos(int s, int qlat, int qlon, boolean abs) {
+        if (abs) {
+            _out.i32(qlat);
+            _out.i32(qlon);
+        }
+        else {
+            _out.zigzag(qlat - _lat[s]);
+            _out.zigzag(qlon - _lon[s]);
+        }
+        _out.b(_speed[s]);
+        _out.b(_course[s]);
+        _out.b(_nav[s]);
+    }
+    
+    
+    private void _writeStatic(int s) {
+        _out.b(_type[s]);
+        _out.text(_name[s]);
+        _out.text(_callsign[s]);
+    }
+    
+    
+    
+    private int _add(long mmsi) {
+        int s = _index.add(mmsi);
+        if (_index.capacity() > _seen.length)
+            _grow(_index.capacity());
+        _hasPos[s] = false;
+        _type[s] = 0;
+        _name[s] = _callsign[s] = null;
+        return s;
+    }
+    
+    
+    private void _remove(int s) {
+        _index.remove(_index.mmsi(s));
+        _name[s] = _callsign[s] = null;
+    }
+    
+    
+    private void _grow(int cap) {
+        _lat = Arrays.copyOf(_lat, cap);
+        _lon = Arrays.copyOf(_lon, cap);
+        _seen = Arrays.copyOf(_seen, cap);
+        _speed = Arrays.copyOf(_speed, cap);
+        _course = Arrays.copyOf(_course, cap);
+        _nav = Arrays.copyOf(_nav, cap);
+        _type = Arrays.copyOf(_type, cap);
+        _hasPos = Arrays.copyOf(_hasPos, cap);
+        _name = Arrays.copyOf(_name, cap);
+        _callsign = Arrays.copyOf(_callsign, cap);
+    }
+}
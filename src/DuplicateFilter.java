@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+
+
+/**
+ * Filter for AIS messages received more than once, for example from overlapping 
+ * feeds. Shared by all AIS channels. A message is identified by a 64 bit hash of
+ * its payload. Hashes are kept in two generations of fixed size: New hashes go 
+ * into the current one, and the generations rotate when half of the time window
+ * has passed or the current one is half full. Memory use is fixed and a message 
+ * is remembered for at least half the window.
+ */
+
+public class DuplicateFilter
+{
+    private final long _window;
+    private final int _max;
+    private long[] _current, _previous;
+    private int _size = 0;
+    private long _rotated;
+
+
+    /**
+     * Constructor.
+     * @param window Time window (ms).
+     * @param capacity Max number of hashes in each generation.
+     */
+    public DuplicateFilter(long window, int capacity) {
+        int cap = 16;
+        while (cap < capacity * 2)
+            cap <<= 1;
+        _window = window;
+        _max = cap / 2;
+        _current = new long[cap];
+        _previous = new long[cap];
+        _rotated = System.currentTimeMillis();
+    }
+
+
+
+    /**
+     * Hash of the payload of a message (FNV-1a, 64 bit).
+     */
+    public static long fingerprint(CharSequence payload) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < payload.length(); i++) {
+            h ^= payload.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return (h == 0 ? 1 : h);
+    }
+
+
+
+    /**
+     * Return true if a message with this payload has been seen within the window.
+     * Otherwise remember it and return false.
+     */
+    public synchronized boolean isDuplicate(CharSequence payload, long now) {
+        if (now - _rotated >= _window / 2 || _size >= _max)
+            rotate(now);
+        long fp = fingerprint(payload);
+        if (contains(_previous, fp))
+            return true;
+        int mask = _current.length - 1;
+        int i = (int) (fp ^ (fp >>> 32)) & mask;
+        while (_current[i] != 0) {
+            if (_current[i] == fp)
+                return true;
+            i = (i + 1) & mask;
+        }
+        _current[i] = fp;
+        _size++;
+        return false;
+    }
+
+
+
+    private static boolean contains(long[] table, long fp) {
+        int mask = table.length - 1;
+        int i = (int) (fp ^ (fp >>> 32)) & mask;
+        while (table[i] != 0) {
+            if (table[i] == fp)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+
+
+    private void rotate(long now) {
+        long[] t = _previous;
+        _previous = _current;
+        Arrays.fill(t, 0);
+        _current = t;
+        _size = 0;
+        _rotated = now;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.nio.charset.StandardCharsets;
+import no.polaric.core.*;
+import no.polaric.aprsd.*;
+import com.fasterxml.jackson.annotation.*;
+
+
+/**
+ * AIS Channel that replays recorded NMEA from a file (plain or gzip). 
+ * Lines are replayed in real time, at a multiple of real time, or as fast as 
+ * possible (speed 0). Timing uses the time in the comment block (c:) of lines, 
+ * if present. When done, the sustained message rate is logged. 
+ */
+ 
+public class FileAisChannel extends AisChannel implements Runnable
+{
+    private   String    _file;
+    private   double    _speed;
+    
+    transient private   Thread  _reader;
+    transient private   volatile boolean _stopped;
+    transient private   volatile long _lines, _startTime, _endTime;
+    transient private   volatile double _rate;
+    transient private   volatile boolean _done;
+    
+        
+    public FileAisChannel(AprsServerConfig conf, String id) 
+    {
+        super(conf, id);
+    }
+   
+       
+    /* 
+     * Information about config to be exchanged in REST API
+     */
+    
+    @JsonTypeName("AIS-FILE")
+    public static class JsConfig extends AisChannel.JsConfig {
+        public String file;
+        public double speed;
+        public long lines;
+        public double rate;
+        public boolean done;
+    }
+       
+       
+    @Override
+    public JsConfig getJsConfig() {
+        var cnf = new JsConfig();
+        setCounters(cnf);
+        cnf.type  = "AIS-FILE";
+        cnf.file  = _conf.getProperty("channel."+getIdent()+".file", "");
+        cnf.speed = _speedSetting();
+        cnf.lines = _lines;
+        cnf.rate  = _rate;
+        cnf.done  = _done;
+        return cnf;
+    }
+    
+    
+    @Override
+    public void setJsConfig(Channel.JsConfig ccnf) {
+        var cnf = (JsConfig) ccnf;
+        var props = _conf.config();
+        props.setProperty("channel."+getIdent()+".file", cnf.file);
+        props.setProperty("channel."+getIdent()+".speed", ""+cnf.speed);
+    }
+    
+       
+   
+    /**
+     * Load/reload configuration parameters. Called each time channel is activated. 
+     */
+    @Override
+    protected void getConfig()
+    {      
+        String id = getIdent();
+        _file = _conf.getProperty("channel."+id+".file", "");
+        _speed = _speedSetting();
+    }
+    
+    
+    /** Replay speed setting. 0 (as fast as possible) if it is not a number. */
+    private double _speedSetting() {
+        String s = _conf.getProperty("channel."+getIdent()+".speed", "0");
+        try {
+            return Double.parseDouble(s.trim());
+        }
+        catch (NumberFormatException e) {
+            _conf.log().warn("AisChannel", chId()+"Invalid speed '"+s+"' for AIS file channel: "+getIdent()+" - using 0");
+            return 0;
+        }
+    }
+    
+    
+    /** Number of packets submitted to the ingest workers and not yet processed. */
+    private long _pending() {
+        var ingest = _ingest;
+        long n = 0;
+        if (ingest != null)
+            for (IngestQueue q : ingest)
+                n += q.pending();
+        return n;
+    }
+   
+   
+   
+    /** 
+     * A replay should not lose packets when it is faster than processing. 
+     */
+    @Override
+    protected String defaultQueuePolicy()
+       { return "block"; }
+ 
+ 
+ 
+    /** Start the service */
+    @Override
+    public void activate(AprsServerConfig a) {
+        try {
+            getConfig();
+            _conf.log().info("AisChannel", chId()+"Activating AIS file channel: "+getIdent()+" ("+_file+", speed="+_speed+")");
+            if (!new File(_file).canRead())
+                throw new FileNotFoundException(_file);
+            _stopped = false;
+            _done = false;
+            _lines = 0;
+            _rate = 0;
+            startIngest();
+            _reader = new Thread(this, "AisFile-"+getIdent());
+            _reader.setDaemon(true);
+            _reader.start();
+            _state = State.STARTING;
+        } catch (Exception e) {
+            _state = State.OFF;
+            _conf.log().error("AisChannel", chId()+"Failed to activate AIS file channel: "+getIdent()+" - "+e);
+            stopIngest();
+            throw new RuntimeException("Failed to activate AIS file channel: "+getIdent(), e);
+        }
+    }
+    
+    
+    
+    /** Open the file. Gzip is recognised by its magic number. */
+    private InputStream open() throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(_file), 65536);
+        in.mark(2);
+        int b1 = in.read(), b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b)
+            return new GZIPInputStream(in, 65536);
+        return in;
+    }
+    
+    
+    
+    /**
+     * Time (epoch millis) from the comment block of a line (c: field), 
+     * -1 if there is none. Seconds and milliseconds are both accepted.
+     */
+    protected static long lineTime(String line) {
+        if (line.length() == 0 || line.charAt(0) != '\\')
+            return -1;
+        int end = line.indexOf('\\', 1);
+        int i = line.indexOf("c:", 1);
+        if (end < 0 || i < 0 || i > end)
+            return -1;
+        i += 2;
+        long t = 0;
+        int n = 0;
+        while (i < end && Character.isDigit(line.charAt(i)) && n < 16) {
+            t = t * 10 + (line.charAt(i++) - '0');
+            n++;
+        }
+        if (n == 0)
+            return -1;
+        return (t < 100000000000L ? t * 1000 : t);
+    }
+    
+    
+    
+    /** Replay loop */
+    public void run() {
+        long firstTs = -1, firstWall = 0;
+        long startMsgs = heardMsgs();
+        _startTime = System.currentTimeMillis();
+        
+        try (BufferedReader rd = new BufferedReader(new InputStreamReader(open(), StandardCharsets.US_ASCII))) {
+            String line;
+            while (!_stopped && (line = rd.readLine()) != null) {
+                if (line.length() == 0)
+                    continue;
+                _lines++;
+                if (_speed > 0) {
+                    long ts = lineTime(line);
+                    if (ts >= 0) {
+                        if (firstTs < 0) {
+                            firstTs = ts;
+                            firstWall = System.currentTimeMillis();
+                        }
+                        long wait = firstWall + (long) ((ts - firstTs) / _speed) - System.currentTimeMillis();
+                        if (wait > 0)
+                            Thread.sleep(wait);
+                    }
+                }
+                receiveLine(line);
+            }
+            
+            /* Wait until the packets submitted are processed, including those a worker has taken */
+            while (!_stopped && _pending() > 0)
+                Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+            if (!_stopped)
+                log.warn(null, chId()+"Replay interrupted");
+        }
+        catch (IOException e) {
+            log.warn(null, chId()+"Cannot read file "+_file+": "+e);
+        }
+        _endTime = System.currentTimeMillis();
+        long msgs = heardMsgs() - startMsgs;
+        long elapsed = Math.max(1, _endTime - _startTime);
+        _rate = Math.round(msgs * 100000.0 / elapsed) / 100.0;
+        _done = true;
+        if (firstTs < 0 && _speed > 0)
+            log.info(null, chId()+"No timestamps in file - replayed as fast as possible");
+        log.info(null, chId()+"Replay of "+_file+" done: "+_lines+" lines, "+msgs+" messages in "
+            +elapsed+" ms ("+_rate+" messages/s)");
+    }
+    
+    
+
+    /** Stop the service */
+    @Override
+    public void deActivate() {
+        _conf.log().info("AisChannel", chId()+"Dectivating AIS file channel: "+getIdent());
+        _stopped = true;
+        try {
+            if (_reader != null) {
+                _reader.interrupt();
+                _reader.join();
+                _reader = null;
+            }
+        } 
+        catch (InterruptedException e) {
+            _conf.log().warn("AisChannel", chId()+"Interrupted while stopping AIS file channel: "+getIdent());
+            Thread.currentThread().interrupt(); 
+        }
+        stopIngest();
+        _state = State.OFF;
+    }
+    
+    
+    
+    @Override
+    public String toString() { return "AIS File Channel"; }
+
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import no.polaric.aprsd.*;
+import dk.dma.ais.message.*;
+
+
+/**
+ * Filter of the messages of a channel, applied to decoded messages before a 
+ * vessel is looked up or created. Config: 
+ * 
+ *   channel.<id>.filter.bbox: Areas as west,south,east,north, separated by ';'. 
+ *   channel.<id>.filter.polygon: Areas as lon,lat points separated by spaces, 
+ *      polygons separated by ';'. Polygons should not cross the 180 degree meridian. 
+ *   channel.<id>.filter.mmsi.allow, channel.<id>.filter.mmsi.deny: MMSIs, ranges 
+ *      (first-last) or prefixes (99*), separated by ','. E.g. "00*, 99*" for base 
+ *      stations and aids to navigation. 
+ *   channel.<id>.filter.types: Ship types, ranges (60-69) or classes (see CLASSES), 
+ *      separated by ','. "unknown" lets through vessels with no known type.
+ * 
+ * If areas are given, a position must be inside one of them. Messages without a 
+ * position, like static data, only pass if the vessel is already known. Ship types 
+ * are learned from static messages, also the ones that are dropped, and kept for 
+ * vessels heard within the expiry time, at most MAX_TYPES. Otherwise the type of 
+ * a known vessel is read from the point DB or store. 
+ * 
+ * Polygons are compiled to a map of cells that are inside, outside or on the edge, 
+ * so only positions in edge cells need the exact test. 
+ */
+
+public class IngestFilter
+{
+    /* Ship type classes: Name, first and last type */
+    private static final Object[][] CLASSES = {
+        {"wig", 20, 29}, {"fishing", 30, 30}, {"towing", 31, 32}, {"dredging", 33, 33}, 
+        {"diving", 34, 34}, {"military", 35, 35}, {"sailing", 36, 36}, {"pleasure", 37, 37},
+        {"hsc", 40, 49}, {"pilot", 50, 50}, {"sar", 51, 51}, {"tug", 52, 52}, {"port", 53, 53},
+        {"law", 55, 55}, {"medical", 58, 58}, {"special", 50, 59}, {"passenger", 60, 69}, 
+        {"cargo", 70, 79}, {"tanker", 80, 89}, {"other", 90, 99}
+    };
+    
+    public static final String[] RULES = {"mmsi.deny", "mmsi.allow", "area", "type"};
+    private static final int R_DENY = 0, R_ALLOW = 1, R_AREA = 2, R_TYPE = 3;
+    private static final int MAX_TYPES = 65536;
+    
+    
+    /* Area where positions are accepted */
+    interface Region {
+        boolean contains(double lat, double lon);
+    }
+    
+    
+    static class Bbox implements Region {
+        final double minLat, minLon, maxLat, maxLon;
+        
+        Bbox(double w, double s, double e, double n)
+           { minLon = w; minLat = s; maxLon = e; maxLat = n; }
+        
+        public boolean contains(double lat, double lon) {
+            if (lat < minLat || lat > maxLat)
+                return false;
+            /* If west > east, the box crosses the 180 degree meridian */
+            return (minLon > maxLon ? lon >= minLon || lon <= maxLon : lon >= minLon && lon <= maxLon);
+        }
+    }
+    
+    
+    
+    static class Polygon implements Region {
+        private static final byte OUT = 0, IN = 1, EDGE = 2;
+        private static final int MAX_CELLS = 128;
+        
+        private final double[] _lat, _lon;
+        private final double _minLat, _minLon, _maxLat, _maxLon, _cellLat, _cellLon;
+        private final int _rows, _cols;
+        private final byte[] _cells;
+        
+        /* Edges overlapping each row: _rowEdges[_rowStart[r] .. _rowStart[r+1]-1] */
+        private final int[] _rowStart;
+        private int[] _rowEdges;
+        
+        
+        Polygon(double[] lat, double[] lon) {
+            _lat = lat;
+            _lon = lon;
+            double a = 90, b = 180, c = -90, d = -180;
+            for (int i = 0; i < lat.length; i++) {
+                a = Math.min(a, lat[i]); c = Math.max(c, lat[i]);
+                b = Math.min(b, lon[i]); d = Math.max(d, lon[i]);
+            }
+            _minLat = a; _minLon = b; _maxLat = c; _maxLon = d;
+            _rows = MAX_CELLS;
+            _cols = MAX_CELLS;
+            _cellLat = Math.max(1e-9, (_maxLat - _minLat) / _rows);
+            _cellLon = Math.max(1e-9, (_maxLon - _minLon) / _cols);
+            _cells = new byte[_rows * _cols];
+            _rowStart = new int[_rows + 1];
+            _compile();
+        }
+        
+        
+        private int _row(double lat)
+           { return Math.max(0, Math.min(_rows - 1, (int) ((lat - _minLat) / _cellLat))); }
+           
+        private int _col(double lon)
+           { return Math.max(0, Math.min(_cols - 1, (int) ((lon - _minLon) / _cellLon))); }
+        
+        
+        /* 
+         * Mark cells crossed by an edge, then classify the others by their center. 
+         * Also list the edges of each row. 
+         */
+        private void _compile() {
+            int n = _lat.length;
+            for (int i = 0, j = n - 1; i < n; j = i++)
+                for (int r = _row(Math.min(_lat[i], _lat[j])); r <= _row(Math.max(_lat[i], _lat[j])); r++)
+                    _rowStart[r + 1]++;
+            for (int r = 0; r < _rows; r++)
+                _rowStart[r + 1] += _rowStart[r];
+            _rowEdges = new int[_rowStart[_rows]];
+            int[] next = Arrays.copyOf(_rowStart, _rows);
+            
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                double y0 = _lat[j], x0 = _lon[j], y1 = _lat[i], x1 = _lon[i];
+                int r0 = _row(Math.min(y0, y1)), r1 = _row(Math.max(y0, y1));
+                for (int r = r0; r <= r1; r++)
+                    _rowEdges[next[r]++] = i;
+                for (int r = r0; r <= r1; r++) {
+                    /* Part of the edge within the latitude band of row r */
+                    double lo = _minLat + r * _cellLat, hi = lo + _cellLat;
+                    double xa, xb;
+                    if (y0 == y1) {
+                        xa = x0; xb = x1;
+                    }
+                    else {
+                        double ta = Math.max(0, Math.min(1, (lo - y0) / (y1 - y0)));
+                        double tb = Math.max(0, Math.min(1, (hi - y0) / (y1 - y0)));
+                        xa = x0 + ta * (x1 - x0);
+                        xb = x0 + tb * (x1 - x0);
+                    }
+                    int c0 = _col(Math.min(xa, xb)), c1 = _col(Math.max(xa, xb));
+                    for (int c = c0; c <= c1; c++)
+                        _cells[r * _cols + c] = EDGE;
+                }
+            }
+            for (int r = 0; r < _rows; r++)
+                for (int c = 0; c < _cols; c++)
+                    if (_cells[r * _cols + c] != EDGE)
+                        _cells[r * _cols + c] = (inside(_minLat + (r + 0.5) * _cellLat, _minLon + (c + 0.5) * _cellLon) ? IN : OUT);
+        }
+        
+        
+        public boolean contains(double lat, double lon) {
+            if (lat < _minLat || lat > _maxLat || lon < _minLon || lon > _maxLon)
+                return false;
+            int r = _row(lat);
+            byte cell = _cells[r * _cols + _col(lon)];
+            if (cell != EDGE)
+                return cell == IN;
+            
+            /* Ray casting with the edges of the row only */
+            boolean in = false;
+            int n = _lat.length;
+            for (int k = _rowStart[r]; k < _rowStart[r + 1]; k++) {
+                int i = _rowEdges[k], j = (i == 0 ? n - 1 : i - 1);
+                if (_cross(i, j, lat, lon))
+                    in = !in;
+            }
+            return in;
+        }
+        
+        
+        /* True if a ray from the point towards east crosses the edge from vertex j to i */
+        private boolean _cross(int i, int j, double lat, double lon) {
+            return (_lat[i] > lat) != (_lat[j] > lat) && 
+                lon < (_lon[j] - _lon[i]) * (lat - _lat[i]) / (_lat[j] - _lat[i]) + _lon[i];
+        }
+        
+        
+        /** Exact test (ray casting). */
+        boolean inside(double lat, double lon) {
+            boolean in = false;
+            int n = _lat.length;
+            for (int i = 0, j = n - 1; i < n; j = i++)
+                if (_cross(i, j, lat, lon))
+                    in = !in;
+            return in;
+        }
+    }
+    
+    
+    
+    private final Region[] _regions;
+    private final long[] _allow, _deny;
+    private final boolean[] _types;
+    private final boolean _unknownType;
+    /* Learned ship types and when they were heard. Locked by _typeOf */
+    private final MmsiSlots _typeOf;
+    private short[] _typeCol;
+    private long[] _typeHeard;
+    private final AtomicLongArray _counts = new AtomicLongArray(RULES.length);
+    
+    
+    IngestFilter(Region[] regions, long[] allow, long[] deny, boolean[] types, boolean unknownType) {
+        _regions = regions;
+        _allow = allow;
+        _deny = deny;
+        _types = types;
+        _unknownType = unknownType;
+        _typeOf = (types == null ? null : new MmsiSlots(1024));
+        _typeCol = (types == null ? null : new short[_typeOf.capacity()]);
+        _typeHeard = (types == null ? null : new long[_typeOf.capacity()]);
+    }
+    
+    
+    
+    /* Remember the ship type of a vessel. Not if the table is full */
+    private void _learnType(long mmsi, int type, long now) {
+        synchronized (_typeOf) {
+            int s = _typeOf.get(mmsi);
+            if (s < 0) {
+                if (_typeOf.size() >= MAX_TYPES)
+                    return;
+                s = _typeOf.add(mmsi);
+                if (_typeOf.capacity() > _typeCol.length) {
+                    _typeCol = Arrays.copyOf(_typeCol, _typeOf.capacity());
+                    _typeHeard = Arrays.copyOf(_typeHeard, _typeOf.capacity());
+                }
+            }
+            _typeCol[s] = (short) type;
+            _typeHeard[s] = now;
+        }
+    }
+    
+    
+    /* Ship type of a vessel: Learned, or from the point DB or store. 0 if not known */
+    private int _typeOf(long mmsi) {
+        synchronized (_typeOf) {
+            int s = _typeOf.get(mmsi);
+            if (s >= 0)
+                return _typeCol[s];
+        }
+        var store = AisPlugin.store;
+        if (store != null)
+            return store.shipType(mmsi);
+        AisVessel v = AisPlugin.index.get(mmsi);
+        return (v == null ? 0 : v.getType());
+    }
+    
+    
+    
+    /**
+     * Forget ship types not heard within ttl ms. Run by VesselExpiry.
+     * @return number of types removed.
+     */
+    public int expire(long now, long ttl) {
+        if (_typeOf == null)
+            return 0;
+        int n = 0;
+        synchronized (_typeOf) {
+            for (int s = 0; s < _typeOf.top(); s++)
+                if (_typeOf.mmsi(s) >= 0 && now - _typeHeard[s] >= ttl) {
+                    _typeOf.remove(_typeOf.mmsi(s));
+                    n++;
+                }
+        }
+        return n;
+    }
+
+    
+    
+    
+    /**
+     * Create the filter of a channel from its config. Null if no filter is configured.
+     */
+    public static IngestFilter create(AprsServerConfig conf, String id) {
+        String pfx = "channel."+id+".filter.";
+        String bbox = conf.getProperty(pfx+"bbox", "").trim();
+        String poly = conf.getProperty(pfx+"polygon", "").trim();
+        String allow = conf.getProperty(pfx+"mmsi.allow", "").trim();
+        String deny = conf.getProperty(pfx+"mmsi.deny", "").trim();
+        String types = conf.getProperty(pfx+"types", "").trim();
+        if (bbox.isEmpty() && poly.isEmpty() && allow.isEmpty() && deny.isEmpty() && types.isEmpty())
+            return null;
+        try {
+            List<Region> regions = new ArrayList<Region>();
+            for (String b : bbox.split(";")) {
+                if (b.isBlank())
+                    continue;
+                String[] x = b.split(",");
+                if (x.length != 4)
+                    throw new IllegalArgumentException("bbox needs 4 values: "+b);
+                regions.add(new Bbox(Double.parseDouble(x[0].trim()), Double.parseDouble(x[1].trim()), 
+                                     Double.parseDouble(x[2].trim()), Double.parseDouble(x[3].trim())));
+            }
+            for (String p : poly.split(";")) {
+                if (p.isBlank())
+                    continue;
+                String[] pts = p.trim().split("\\s+");
+                if (pts.length < 3)
+                    throw new IllegalArgumentException("Polygon needs at least 3 points: "+p);
+                double[] lat = new double[pts.length], lon = new double[pts.length];
+                for (int i = 0; i < pts.length; i++) {
+                    String[] x = pts[i].split(",");
+                    lon[i] = Double.parseDouble(x[0]);
+                    lat[i] = Double.parseDouble(x[1]);
+                }
+                regions.add(new Polygon(lat, lon));
+            }
+            
+            boolean[] tset = null;
+            boolean unknown = false;
+            if (!types.isEmpty()) {
+                tset = new boolean[256];
+                for (String t : types.split(",")) {
+                    t = t.trim().toLowerCase();
+                    if (t.equals("unknown"))
+                        unknown = true;
+                    else {
+                        long[] r = _typeRange(t);
+                        for (long i = r[0]; i <= r[1] && i < 256; i++)
+                            tset[(int) i] = true;
+                    }
+                }
+            }
+            return new IngestFilter(regions.isEmpty() ? null : regions.toArray(new Region[0]), 
+                _mmsiRanges(allow), _mmsiRanges(deny), tset, unknown);
+        }
+        catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid filter config for channel "+id+": "+e.getMessage(), e);
+        }
+    }
+    
+    
+    
+    private static long[] _typeRange(String t) {
+        for (Object[] c : CLASSES)
+            if (c[0].equals(t))
+                return new long[] {(Integer) c[1], (Integer) c[2]};
+        return _range(t);
+    }
+    
+    
+    /* Range "a-b" or single number as {a, b} */
+    private static long[] _range(String s) {
+        int i = s.indexOf('-');
+        if (i > 0)
+            return new long[] {Long.parseLong(s.substring(0, i).trim()), Long.parseLong(s.substring(i+1).trim())};
+        long x = Long.parseLong(s.trim());
+        return new long[] {x, x};
+    }
+    
+    
+    /* MMSI ranges as pairs of first and last. Null if none */
+    private static long[] _mmsiRanges(String s) {
+        if (s.isEmpty())
+            return null;
+        String[] items = s.split(",");
+        long[] res = new long[items.length * 2];
+        for (int i = 0; i < items.length; i++) {
+            String x = items[i].trim();
+            long[] r;
+            if (x.endsWith("*")) {
+                /* Prefix of the 9 digit MMSI */
+                String p = x.substring(0, x.length() - 1);
+                if (p.length() > 9)
+                    throw new IllegalArgumentException("MMSI prefix too long: "+x);
+                long scale = (long) Math.pow(10, 9 - p.length());
+                long first = (p.isEmpty() ? 0 : Long.parseLong(p)) * scale;
+                r = new long[] {first, first + scale - 1};
+            }
+            else
+                r = _range(x);
+            res[i * 2] = r[0];
+            res[i * 2 + 1] = r[1];
+        }
+        return res;
+    }
+    
+    
+    private static boolean _inRanges(long[] ranges, long mmsi) {
+        for (int i = 0; i < ranges.length; i += 2)
+            if (mmsi >= ranges[i] && mmsi <= ranges[i + 1])
+                return true;
+        return false;
+    }
+    
+    
+    
+    /**
+     * Return true if the message is to be processed. Dropped messages are 
+     * counted per rule. 
+     */
+    public boolean accept(AisMessage msg) {
+        long mmsi = msg.getUserId();
+        if (_deny != null && _inRanges(_deny, mmsi)) 
+            return _drop(R_DENY);
+        if (_allow != null && !_inRanges(_allow, mmsi))
+            return _drop(R_ALLOW);
+        
+        if (_types != null) {
+            int type = -1;
+            if (msg instanceof AisStaticCommon) {
+                type = ((AisStaticCommon) msg).getShipType();
+                if (type != 0)
+                    _learnType(mmsi, type, System.currentTimeMillis());
+            }
+            if (type <= 0)
+                type = _typeOf(mmsi);
+            if (type <= 0 ? !_unknownType : (type > 255 || !_types[type]))
+                return _drop(R_TYPE);
+        }
+        
+        if (_regions != null) {
+            AisPosition pos = (msg instanceof IPositionMessage ? ((IPositionMessage) msg).getPos() : null);
+            double lat = (pos == null ? 91 : pos.getLatitudeDouble());
+            double lon = (pos == null ? 181 : pos.getLongitudeDouble());
+            if (lat > 90 || lat < -90 || lon > 180 || lon < -180) {
+                /* No position: Only for vessels that are known */
+                var store = AisPlugin.store;
+                boolean known = (store != null ? store.find(mmsi) >= 0 : AisPlugin.index.get(mmsi) != null);
+                return known || _drop(R_AREA);
+            }
+            for (Region r : _regions)
+                if (r.contains(lat, lon))
+                    return true;
+            return _drop(R_AREA);
+        }
+        return true;
+    }
+    
+    
+    private boolean _drop(int rule) {
+        _counts.incrementAndGet(rule);
+        return false;
+    }
+    
+    
+    
+    /** Number of messages dropped, per rule. */
+    public Map<String, Long> counts() {
+        Map<String, Long> res = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < RULES.length; i++)
+            res.put(RULES[i], _counts.get(i));
+        return res;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Operational metrics of an AIS channel: Messages per message id, parse failures,
+ * dropped positions, trail points elided, latency from reception to DB update and DB update time. 
+ * Recording uses LongAdders and lock-free histograms, so it can be done from 
+ * any number of ingest workers. 
+ */
+
+public class IngestMetrics
+{
+    public static final int MAX_MSGID = 27;
+    private static final long RATE_INTERVAL = 10000;
+
+    private final LongAdder[] _byType = new LongAdder[MAX_MSGID + 1];
+    public final LongAdder parseErrors = new LongAdder();
+    public final LongAdder invalidPos = new LongAdder();
+    public final LongAdder badLat = new LongAdder();
+    public final LongAdder elided = new LongAdder();
+    public final LatencyHistogram latency = new LatencyHistogram();
+    public final LatencyHistogram dbTime = new LatencyHistogram();
+
+    /* Message rates, computed every RATE_INTERVAL */
+    private final long[] _lastCounts = new long[MAX_MSGID + 1];
+    private volatile double[] _rates = new double[MAX_MSGID + 1];
+    private final AtomicLong _lastSample = new AtomicLong(System.currentTimeMillis());
+
+
+    public IngestMetrics() {
+        for (int i = 0; i <= MAX_MSGID; i++)
+            _byType[i] = new LongAdder();
+    }
+
+
+
+    /** Count a message. Unknown message ids are counted as 0. */
+    public void message(int msgId) {
+        _byType[(msgId < 0 || msgId > MAX_MSGID) ? 0 : msgId].increment();
+    }
+
+
+    public long messages(int msgId)
+       { return _byType[msgId].sum(); }
+
+
+
+    /**
+     * Update message rates if the interval has passed. Cheap if not.
+     */
+    public void tick(long now) {
+        long last = _lastSample.get();
+        if (now - last < RATE_INTERVAL || !_lastSample.compareAndSet(last, now))
+            return;
+        double[] rates = new double[MAX_MSGID + 1];
+        synchronized (_lastCounts) {
+            for (int i = 0; i <= MAX_MSGID; i++) {
+                long c = _byType[i].sum();
+                rates[i] = (c - _lastCounts[i]) * 1000.0 / (now - last);
+                _lastCounts[i] = c;
+            }
+        }
+        _rates = rates;
+    }
+
+
+
+    /** 
+     * Messages per second for each message id that has been received, 
+     * over the last rate interval.
+     */
+    public Map<Integer, Double> rates() {
+        TreeMap<Integer, Double> res = new TreeMap<Integer, Double>();
+        double[] rates = _rates;
+        for (int i = 0; i <= MAX_MSGID; i++)
+            if (_byType[i].sum() > 0)
+                res.put(i, Math.round(rates[i] * 100) / 100.0);
+        return res;
+    }
+
+
+
+    /**
+     * Write the metrics in Prometheus text format, labelled with the channel id.
+     * The HELP and TYPE lines are written by writeHeaders.
+     */
+    public void writePrometheus(StringBuilder sb, String chan) {
+        String lbl = "channel=\"" + chan + "\"";
+        for (int i = 0; i <= MAX_MSGID; i++) {
+            long c = _byType[i].sum();
+            if (c > 0)
+                sb.append("ais_messages_total{").append(lbl).append(",msgid=\"").append(i).append("\"} ").append(c).append('\n');
+        }
+        sb.append("ais_parse_errors_total{").append(lbl).append("} ").append(parseErrors.sum()).append('\n');
+        sb.append("ais_dropped_positions_total{").append(lbl).append(",reason=\"invalid\"} ").append(invalidPos.sum()).append('\n');
+        sb.append("ais_dropped_positions_total{").append(lbl).append(",reason=\"latitude\"} ").append(badLat.sum()).append('\n');
+        sb.append("ais_trail_elided_total{").append(lbl).append("} ").append(elided.sum()).append('\n');
+        _summary(sb, "ais_ingest_latency_seconds", lbl, latency);
+        _summary(sb, "ais_db_update_seconds", lbl, dbTime);
+    }
+
+
+
+    public static void writeHeaders(StringBuilder sb) {
+        sb.append("# HELP ais_messages_total AIS messages processed, by message id.\n");
+        sb.append("# TYPE ais_messages_total counter\n");
+        sb.append("# HELP ais_parse_errors_total AIS messages that could not be parsed.\n");
+        sb.append("# TYPE ais_parse_errors_total counter\n");
+        sb.append("# HELP ais_dropped_positions_total Position reports dropped.\n");
+        sb.append("# TYPE ais_dropped_positions_total counter\n");
+        sb.append("# HELP ais_trail_elided_total Position reports not saved to the trail by the trail policy.\n");
+        sb.append("# TYPE ais_trail_elided_total counter\n");
+        sb.append("# HELP ais_ingest_latency_seconds Time from processing of a message starts until its DB update is done. Quantiles over the last 1-2 minutes.\n");
+        sb.append("# TYPE ais_ingest_latency_seconds summary\n");
+        sb.append("# HELP ais_db_update_seconds Time of DB updates. Quantiles over the last 1-2 minutes.\n");
+        sb.append("# TYPE ais_db_update_seconds summary\n");
+    }
+
+
+
+    private static void _summary(StringBuilder sb, String name, String lbl, LatencyHistogram h) {
+        sb.append(name).append('{').append(lbl).append(",quantile=\"0.5\"} ").append(h.percentile(0.5) / 1e6).append('\n');
+        sb.append(name).append('{').append(lbl).append(",quantile=\"0.99\"} ").append(h.percentile(0.99) / 1e6).append('\n');
+        sb.append(name).append("_sum{").append(lbl).append("} ").append(h.sum() / 1e6).append('\n');
+        sb.append(name).append("_count{").append(lbl).append("} ").append(h.count()).append('\n');
+    }
+}
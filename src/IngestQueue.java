@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import dk.dma.ais.packet.AisPacket;
+
+
+/**
+ * Bounded queue between the reader thread of an AIS channel and the processing
+ * of packets. The reader thread only enqueues packets. A worker thread drains the
+ * queue in batches and applies the DB updates once per batch.
+ */
+
+public class IngestQueue implements Runnable
+{
+    private static final long POLL_TIME = 500;
+
+    private final AisChannel _chan;
+    private final ArrayBlockingQueue<AisPacket> _queue;
+    private final boolean _block;
+    private final int _capacity;
+    private final int _batchSize;
+    private final ArrayList<AisPacket> _buf;
+    private final UpdateBatch _batch;
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _accepted = new AtomicLong(), _processed = new AtomicLong();
+    private volatile boolean _running = false;
+    private Thread _thread;
+
+
+    /**
+     * Constructor.
+     * @param chan Channel that processes the packets.
+     * @param capacity Max number of packets in the queue.
+     * @param block If true, the reader waits when the queue is full. If false, packets are dropped.
+     * @param batchSize Max number of packets to process before DB updates are applied.
+     */
+    public IngestQueue(AisChannel chan, int capacity, boolean block, int batchSize) {
+        _chan = chan;
+        _queue = new ArrayBlockingQueue<AisPacket>(capacity);
+        _block = block;
+        _capacity = capacity;
+        _batchSize = batchSize;
+        _buf = new ArrayList<AisPacket>(batchSize);
+        _batch = new UpdateBatch(chan);
+    }
+
+
+    /** Number of packets waiting to be processed. */
+    public int depth()
+       { return _queue.size(); }
+
+    /** Max number of packets in the queue. */
+    public int capacity()
+       { return _capacity; }
+
+    /** 
+     * Number of packets accepted and not yet processed. Includes the packets a 
+     * worker has taken from the queue, until their DB updates are applied.
+     */
+    public long pending()
+       { return _accepted.get() - _processed.get(); }
+
+    /** Number of packets dropped because the queue was full. */
+    public long dropped()
+       { return _dropped.get(); }
+
+    /** Number of position reports replaced by coalescing. */
+    public long coalesced()
+       { return _batch.coalesced(); }
+
+
+
+    /**
+     * Enqueue a packet. Called from the reader thread.
+     * @return false if the packet was dropped.
+     */
+    public boolean put(AisPacket packet) {
+        if (_block) {
+            try {
+                _queue.put(packet);
+                _accepted.incrementAndGet();
+                return true;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                _dropped.incrementAndGet();
+                return false;
+            }
+        }
+        if (_queue.offer(packet)) {
+            _accepted.incrementAndGet();
+            return true;
+        }
+        _dropped.incrementAndGet();
+        return false;
+    }
+
+
+
+    /** Start the worker thread. */
+    public void start(String name) {
+        _running = true;
+        _thread = new Thread(this, name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+
+
+    /** Stop the worker thread. Packets still in the queue are discarded. */
+    public void stop() {
+        _running = false;
+        if (_thread == null)
+            return;
+        _thread.interrupt();
+        try {
+            _thread.join(5000);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        _thread = null;
+        _queue.clear();
+    }
+
+
+
+    /** Worker loop. Drain the queue in batches. */
+    public void run() {
+        long pollTime = POLL_TIME;
+        if (_chan._coalesceTime > 0 && _chan._coalesceTime < pollTime)
+            pollTime = _chan._coalesceTime;
+        
+        while (_running) {
+            int n = 0;
+            try {
+                AisPacket p = _queue.poll(pollTime, TimeUnit.MILLISECONDS);
+                if (p == null) {
+                    /* Idle. Held positions may be due */
+                    _batch.flush();
+                    var ovl = _chan._overload;
+                    if (ovl != null)
+                        ovl.processed(0, 0, System.currentTimeMillis());
+                    continue;
+                }
+                long t = System.nanoTime();
+                _buf.add(p);
+                _queue.drainTo(_buf, _batchSize - 1);
+                n = _buf.size();
+                for (AisPacket x : _buf)
+                    _chan.handlePacket(x, _batch);
+                _buf.clear();
+                _batch.flush();
+                var ovl = _chan._overload;
+                if (ovl != null)
+                    ovl.processed(n, System.nanoTime() - t, System.currentTimeMillis());
+                _processed.addAndGet(n);
+            }
+            catch (InterruptedException e) {
+                if (!_running)
+                    break;
+            }
+            catch (Exception e) {
+                /* The batch is given up, and counts as processed */
+                _processed.addAndGet(n);
+                _buf.clear();
+                AisPlugin.log.warn(null, "Ingest worker: "+e);
+            }
+        }
+        /* Updates already applied to vessels should reach the DB */
+        _batch.releaseAll();
+        _batch.flush();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Lock-free histogram of durations in microseconds. Buckets are log-linear: 
+ * Each power of two is split into 8 sub-buckets, so percentiles have a relative 
+ * error of at most 12.5%. Recording is an atomic increment. 
+ * 
+ * Percentiles are over a sliding window, so they follow the current load: The 
+ * buckets are replaced every WINDOW ms, and the previous ones are kept, so a 
+ * percentile covers the last one to two windows. Count and sum are since start. 
+ */
+
+public class LatencyHistogram
+{
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (64 - 4) * SUB;
+
+    private static final long WINDOW = 60000;
+
+    private volatile AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private volatile AtomicLongArray _prev = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _rotated = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+
+
+    private static int _bucket(long v) {
+        if (v < LINEAR)
+            return (int) Math.max(0, v);
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BITS)) & (SUB - 1);
+        return LINEAR + (e - 4) * SUB + sub;
+    }
+
+
+    /* Upper bound of values in a bucket */
+    private static long _value(int b) {
+        if (b < LINEAR)
+            return b;
+        int e = (b - LINEAR) / SUB + 4;
+        int sub = (b - LINEAR) % SUB;
+        return ((long) (SUB + sub + 1) << (e - SUB_BITS)) - 1;
+    }
+
+
+
+    /* Start a new window if the current one is over. Cheap if not */
+    private void _rotate(long now) {
+        long last = _rotated.get();
+        if (now - last < WINDOW || !_rotated.compareAndSet(last, now))
+            return;
+        _prev = (now - last < 2 * WINDOW ? _counts : new AtomicLongArray(BUCKETS));
+        _counts = new AtomicLongArray(BUCKETS);
+    }
+    
+    
+
+    /** Record a duration (microseconds). */
+    public void record(long micros) {
+        _rotate(System.currentTimeMillis());
+        _counts.incrementAndGet(_bucket(micros));
+        _count.increment();
+        _sum.add(micros);
+    }
+
+
+    /** Number of recorded values. */
+    public long count()
+       { return _count.sum(); }
+
+
+    /** Sum of recorded values (microseconds). */
+    public long sum()
+       { return _sum.sum(); }
+
+
+
+    /**
+     * Return the value (microseconds) below which a fraction p of the values 
+     * recorded in the last one to two windows fall. 0 if nothing is recorded. 
+     */
+    public long percentile(double p) {
+        _rotate(System.currentTimeMillis());
+        AtomicLongArray cur = _counts, prev = _prev;
+        long[] snap = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snap[i] = cur.get(i) + prev.get(i);
+            total += snap[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(p * total);
+        long acc = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            acc += snap[i];
+            if (acc >= rank)
+                return _value(i);
+        }
+        return _value(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+
+
+/**
+ * Index of AIS vessels keyed by MMSI, so lookups do not need to build the "MMSI:" 
+ * ident string. It is consulted before the generic point DB. The vessels are kept 
+ * in a column indexed by the slots of an MmsiSlots table.
+ * 
+ * Lookups are done without the lock, since they are made for every packet by 
+ * all ingest workers. A vessel found that way is checked against the MMSI, and 
+ * if there is no match, the lookup is repeated under the lock. Changes, values() 
+ * and clear() are synchronized.
+ */
+
+public class MmsiIndex
+{
+    private final MmsiSlots _slots;
+    private volatile AisVessel[] _vals;
+
+
+    public MmsiIndex(int capacity) {
+        _slots = new MmsiSlots(capacity);
+        _vals = new AisVessel[_slots.capacity()];
+    }
+
+
+    public MmsiIndex()
+       { this(1024); }
+
+
+
+    /** Get vessel with given MMSI. Null if not found. */
+    public AisVessel get(long mmsi) {
+        AisVessel[] vals = _vals;
+        int s = _slots.find(mmsi);
+        if (s >= 0 && s < vals.length) {
+            AisVessel v = vals[s];
+            if (v != null && v.getMmsi() == mmsi)
+                return v;
+        }
+        return _get(mmsi);
+    }
+    
+    
+    private synchronized AisVessel _get(long mmsi) {
+        int s = _slots.get(mmsi);
+        return (s < 0 ? null : _vals[s]);
+    }
+
+
+
+    /** Add or replace vessel. */
+    public synchronized void put(long mmsi, AisVessel v) {
+        int s = _slots.get(mmsi);
+        if (s < 0) {
+            s = _slots.add(mmsi);
+            if (_slots.capacity() > _vals.length)
+                _vals = Arrays.copyOf(_vals, _slots.capacity());
+        }
+        _vals[s] = v;
+    }
+
+
+
+    /** Remove vessel with given MMSI. Return the removed vessel or null. */
+    public synchronized AisVessel remove(long mmsi) {
+        int s = _slots.remove(mmsi);
+        if (s < 0)
+            return null;
+        AisVessel v = _vals[s];
+        _vals[s] = null;
+        return v;
+    }
+
+
+
+    public synchronized int size()
+       { return _slots.size(); }
+
+
+
+    /** Return a copy of the vessels in the index. */
+    public synchronized List<AisVessel> values() {
+        ArrayList<AisVessel> res = new ArrayList<AisVessel>(_slots.size());
+        for (int s = 0; s < _slots.top(); s++)
+            if (_slots.mmsi(s) >= 0)
+                res.add(_vals[s]);
+        return res;
+    }
+
+
+
+    public synchronized void clear() {
+        Arrays.fill(_vals, 0, _slots.top(), null);
+        _slots.clear();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+
+
+/**
+ * Table of MMSIs, each with a slot number, for keeping vessel attributes in arrays 
+ * indexed by slot. Slots of removed MMSIs are reused. The MMSI to slot map uses 
+ * open addressing with linear probing on primitive long keys. This is the one MMSI 
+ * hash of the plugin: MmsiIndex, VesselStore and the delta stream keep their own 
+ * columns by slot and grow them when capacity() grows. Not synchronized, the owner 
+ * of the table locks it, except for lookups with find(). 
+ */
+
+public class MmsiSlots
+{
+    private static final long EMPTY = -1;
+
+    /* Hash table: MMSI to slot. Replaced as a whole when it grows */
+    private static final class Hash {
+        final long[] keys;
+        final int[] slots;
+        final int mask;
+        
+        Hash(int cap) {
+            keys = new long[cap];
+            slots = new int[cap];
+            Arrays.fill(keys, EMPTY);
+            mask = cap - 1;
+        }
+    }
+    private volatile Hash _h;
+    
+    /* MMSI by slot, EMPTY for free slots */
+    private long[] _mmsi;
+    private int[] _free = new int[16];
+    private int _nfree = 0;
+    private int _top = 0;
+    private int _size = 0;
+
+
+    public MmsiSlots(int capacity) {
+        int cap = 16;
+        while (cap < capacity)
+            cap <<= 1;
+        _mmsi = new long[cap];
+        _h = new Hash(cap * 2);
+    }
+
+
+    private static int _hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+
+
+    /** Slot of given MMSI. -1 if not found. */
+    public int get(long mmsi) {
+        Hash h = _h;
+        int i = _hash(mmsi) & h.mask;
+        while (h.keys[i] != EMPTY) {
+            if (h.keys[i] == mmsi)
+                return h.slots[i];
+            i = (i + 1) & h.mask;
+        }
+        return -1;
+    }
+    
+    
+    
+    /**
+     * Slot of given MMSI, for readers that do not hold the owner's lock. While the 
+     * table is changed, the result may be -1 or a slot of another MMSI, so the caller 
+     * must check what it finds in the slot, and look again under the lock if it does 
+     * not match. 
+     */
+    public int find(long mmsi) {
+        Hash h = _h;
+        long[] keys = h.keys;
+        int i = _hash(mmsi) & h.mask;
+        for (int n = 0; n <= h.mask; n++) {
+            long k = keys[i];
+            if (k == EMPTY)
+                return -1;
+            if (k == mmsi)
+                return h.slots[i];
+            i = (i + 1) & h.mask;
+        }
+        return -1;
+    }
+
+
+
+    /** 
+     * Add an MMSI that is not in the table. A free slot is reused if there is one. 
+     * The capacity may grow. 
+     * @return the slot of the MMSI.
+     */
+    public int add(long mmsi) {
+        int s;
+        if (_nfree > 0)
+            s = _free[--_nfree];
+        else {
+            if (_top == _mmsi.length)
+                _mmsi = Arrays.copyOf(_mmsi, _top * 2);
+            s = _top++;
+        }
+        _mmsi[s] = mmsi;
+        
+        if ((_size + 1) * 2 > _h.keys.length)
+            _rehash(_h.keys.length * 2);
+        Hash h = _h;
+        int i = _hash(mmsi) & h.mask;
+        while (h.keys[i] != EMPTY)
+            i = (i + 1) & h.mask;
+        /* Slot before key, so a reader that sees the key sees the slot */
+        h.slots[i] = s;
+        h.keys[i] = mmsi;
+        _size++;
+        return s;
+    }
+
+
+
+    /** Remove given MMSI and free its slot. Return the slot or -1. */
+    public int remove(long mmsi) {
+        Hash h = _h;
+        int i = _hash(mmsi) & h.mask;
+        while (h.keys[i] != EMPTY) {
+            if (h.keys[i] == mmsi) {
+                int s = h.slots[i];
+                _delete(h, i);
+                _size--;
+                _mmsi[s] = EMPTY;
+                if (_nfree == _free.length)
+                    _free = Arrays.copyOf(_free, _nfree * 2);
+                _free[_nfree++] = s;
+                return s;
+            }
+            i = (i + 1) & h.mask;
+        }
+        return -1;
+    }
+
+
+
+    /* Delete entry i and shift back entries in the probe sequence after it */
+    private static void _delete(Hash h, int i) {
+        long[] keys = h.keys;
+        int j = i;
+        while (true) {
+            j = (j + 1) & h.mask;
+            if (keys[j] == EMPTY)
+                break;
+            int home = _hash(keys[j]) & h.mask;
+            /* Move entry j to i if i lies cyclically in [home, j) */
+            if ((j > i && (home <= i || home > j)) || (j < i && (home <= i && home > j))) {
+                h.slots[i] = h.slots[j];
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+    }
+
+
+
+    /* Build a larger table, then publish it */
+    private void _rehash(int cap) {
+        Hash old = _h, h = new Hash(cap);
+        for (int k = 0; k < old.keys.length; k++) {
+            if (old.keys[k] == EMPTY)
+                continue;
+            int i = _hash(old.keys[k]) & h.mask;
+            while (h.keys[i] != EMPTY)
+                i = (i + 1) & h.mask;
+            h.keys[i] = old.keys[k];
+            h.slots[i] = old.slots[k];
+        }
+        _h = h;
+    }
+
+
+
+    /** MMSI in a slot. -1 if the slot is free. */
+    public long mmsi(int s)
+       { return _mmsi[s]; }
+       
+    /** Number of slots in use or free. Slots above this are not used yet. */
+    public int top()
+       { return _top; }
+       
+    /** Number of slots that columns of the owner need. */
+    public int capacity()
+       { return _mmsi.length; }
+
+    /** Number of MMSIs in the table. */
+    public int size()
+       { return _size; }
+
+
+    public void clear() {
+        _h = new Hash(_h.keys.length);
+        Arrays.fill(_mmsi, 0, _top, EMPTY);
+        _nfree = 0;
+        _top = 0;
+        _size = 0;
+    }
+}
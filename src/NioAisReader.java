@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Reads NMEA lines from any number of TCP feeds, on one thread with a selector. 
+ * Data is read into pooled direct buffers and lines are split at the byte level. 
+ * A line is given to the endpoint's handler as bytes, so nothing is allocated for 
+ * lines that are not used. Lost or failed connections are retried with exponential 
+ * backoff. Host names are resolved on a separate thread, so a slow lookup does not 
+ * hold up the other feeds, and connects that do not complete within CONNECT_TIMEOUT 
+ * ms fail. 
+ * 
+ * There is one reader for the plugin. Its thread is started when the first 
+ * endpoint is added and stops when the last one is removed.
+ */
+
+public class NioAisReader implements Runnable
+{
+    private static final int BUFSIZE = 16384;
+    private static final int MAX_LINE = 512;
+    private static final int MAX_POOLED = 64;
+    private static final long MIN_BACKOFF = 1000;
+    private static final long CONNECT_TIMEOUT = 10000;
+    
+    /* Resolves host names off the reader thread. Lookups are few, so two threads will do */
+    private static final ExecutorService _resolver = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "AisNioResolver");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private static NioAisReader _instance;
+    private static int _users = 0;
+    
+    
+    /** 
+     * Receives lines. The content is in buf[0..len-1], without line terminator, 
+     * and is only valid during the call. 
+     */
+    public interface LineHandler {
+        void line(byte[] buf, int len);
+    }
+    
+    
+    /**
+     * A TCP feed. Fields other than the config are only used by the reader thread.
+     */
+    public static class Endpoint {
+        private final String _name, _host;
+        private final int _port;
+        private final long _maxBackoff;
+        private final LineHandler _handler;
+        
+        private SocketChannel _ch;
+        private ByteBuffer _buf;
+        private final byte[] _line = new byte[MAX_LINE];
+        private int _len;
+        private boolean _overflow;
+        private long _backoff = MIN_BACKOFF;
+        private long _nextAttempt;
+        private boolean _resolving;
+        private long _connectStart;
+        private volatile boolean _connected;
+        private volatile long _reconnects;
+        
+        /**
+         * Constructor. 
+         * @param name Name used in log messages.
+         * @param maxBackoff Max time (ms) between reconnect attempts.
+         */
+        public Endpoint(String name, String host, int port, long maxBackoff, LineHandler handler) {
+            _name = name;
+            _host = host;
+            _port = port;
+            _maxBackoff = Math.max(MIN_BACKOFF, maxBackoff);
+            _handler = handler;
+        }
+        
+        public boolean isConnected()
+           { return _connected; }
+           
+        /** Number of times the connection was lost or could not be made. */
+        public long reconnects()
+           { return _reconnects; }
+    }
+    
+    
+    
+    private final Selector _selector;
+    private final ConcurrentLinkedQueue<Runnable> _pending = new ConcurrentLinkedQueue<Runnable>();
+    private final ArrayList<Endpoint> _endpoints = new ArrayList<Endpoint>();
+    private final ArrayDeque<ByteBuffer> _pool = new ArrayDeque<ByteBuffer>();
+    private final Thread _thread;
+    private volatile boolean _running = true;
+    
+    
+    private NioAisReader() throws IOException {
+        _selector = Selector.open();
+        _thread = new Thread(this, "AisNioReader");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+    
+    
+    
+    /** 
+     * Start reading from an endpoint. 
+     */
+    public static void add(Endpoint e) throws IOException {
+        synchronized (NioAisReader.class) {
+            if (_instance == null)
+                _instance = new NioAisReader();
+            _users++;
+            NioAisReader r = _instance;
+            r._call(() -> {
+                r._endpoints.add(e);
+                e._nextAttempt = 0;
+            });
+        }
+    }
+    
+    
+    
+    /** 
+     * Stop reading from an endpoint and close its connection. When this returns, 
+     * the handler is not called again.
+     */
+    public static void remove(Endpoint e) {
+        NioAisReader r;
+        synchronized (NioAisReader.class) {
+            r = _instance;
+            if (r == null)
+                return;
+            if (--_users == 0) {
+                _instance = null;
+                r._running = false;
+            }
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        r._call(() -> {
+            if (r._endpoints.remove(e))
+                r._close(e);
+            done.countDown();
+        });
+        try {
+            done.await(5, TimeUnit.SECONDS);
+            if (!r._running)
+                r._thread.join(5000);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    
+    
+    /* Run on the reader thread */
+    private void _call(Runnable r) {
+        _pending.add(r);
+        _selector.wakeup();
+    }
+    
+    
+    
+    /** Reader loop */
+    public void run() {
+        while (true) {
+            Runnable r;
+            while ((r = _pending.poll()) != null)
+                r.run();
+            if (!_running)
+                break;
+            try {
+                long now = System.currentTimeMillis();
+                long timeout = 1000;
+                for (Endpoint e : _endpoints) {
+                    if (e._ch == null) {
+                        if (e._resolving)
+                            continue;
+                        if (now >= e._nextAttempt)
+                            _resolve(e);
+                        else
+                            timeout = Math.min(timeout, e._nextAttempt - now);
+                    }
+                    else if (!e._connected) {
+                        /* Connect pending */
+                        long left = e._connectStart + CONNECT_TIMEOUT - now;
+                        if (left <= 0)
+                            _failed(e, "Connect timed out");
+                        else
+                            timeout = Math.min(timeout, left);
+                    }
+                }
+                _selector.select(Math.max(1, timeout));
+                
+                for (SelectionKey k : _selector.selectedKeys()) {
+                    Endpoint e = (Endpoint) k.attachment();
+                    try {
+                        if (!k.isValid())
+                            continue;
+                        if (k.isConnectable()) {
+                            if (e._ch.finishConnect())
+                                _connected(e);
+                        }
+                        else if (k.isReadable())
+                            _read(e);
+                    }
+                    catch (IOException ex) {
+                        _failed(e, ex.toString());
+                    }
+                }
+                _selector.selectedKeys().clear();
+            }
+            catch (Exception ex) {
+                AisPlugin.log.warn(null, "NIO reader: "+ex);
+            }
+        }
+        for (Endpoint e : _endpoints)
+            _close(e);
+        _endpoints.clear();
+        try { _selector.close(); } 
+        catch (IOException e) {}
+    }
+    
+    
+    
+    /* Resolve the host name on the resolver thread, then connect on the reader thread */
+    private void _resolve(Endpoint e) {
+        e._resolving = true;
+        _resolver.execute(() -> {
+            InetSocketAddress addr = new InetSocketAddress(e._host, e._port);
+            _call(() -> {
+                e._resolving = false;
+                if (!_endpoints.contains(e))
+                    return;
+                if (addr.isUnresolved())
+                    _failed(e, "Cannot resolve host name");
+                else
+                    _connect(e, addr);
+            });
+        });
+    }
+    
+    
+    
+    private void _connect(Endpoint e, InetSocketAddress addr) {
+        try {
+            e._connectStart = System.currentTimeMillis();
+            e._ch = SocketChannel.open();
+            e._ch.configureBlocking(false);
+            e._ch.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            if (e._ch.connect(addr)) {
+                e._ch.register(_selector, SelectionKey.OP_READ, e);
+                _connected(e);
+            }
+            else
+                e._ch.register(_selector, SelectionKey.OP_CONNECT, e);
+        }
+        catch (IOException ex) {
+            _failed(e, ex.toString());
+        }
+    }
+    
+    
+    
+    private void _connected(Endpoint e) throws IOException {
+        e._ch.keyFor(_selector).interestOps(SelectionKey.OP_READ);
+        e._buf = _pool.isEmpty() ? ByteBuffer.allocateDirect(BUFSIZE) : _pool.poll();
+        e._len = 0;
+        e._overflow = false;
+        e._connected = true;
+        AisPlugin.log.info(null, e._name+": Connected to "+e._host+":"+e._port);
+    }
+    
+    
+    
+    private void _read(Endpoint e) throws IOException {
+        ByteBuffer buf = e._buf;
+        int n = e._ch.read(buf);
+        if (n < 0) {
+            _failed(e, "Connection closed");
+            return;
+        }
+        e._backoff = MIN_BACKOFF;
+        buf.flip();
+        byte[] line = e._line;
+        int len = e._len;
+        int limit = buf.limit();
+        while (buf.hasRemaining()) {
+            /* Find the end of the line, then copy what is before it in one go */
+            int start = buf.position(), end = start;
+            while (end < limit && buf.get(end) != '\n' && buf.get(end) != '\r')
+                end++;
+            int k = Math.min(end - start, MAX_LINE - len);
+            buf.get(line, len, k);
+            len += k;
+            if (k < end - start)
+                /* Too long, ignore the rest of the line */
+                e._overflow = true;
+            if (end == limit)
+                break;
+            buf.position(end + 1);
+            if (len > 0 && !e._overflow)
+                _deliver(e, len);
+            len = 0;
+            e._overflow = false;
+        }
+        e._len = len;
+        buf.clear();
+    }
+    
+    
+    
+    private void _deliver(Endpoint e, int len) {
+        try {
+            e._handler.line(e._line, len);
+        }
+        catch (RuntimeException ex) {
+            AisPlugin.log.warn(null, e._name+": Error in line handler: "+ex);
+        }
+    }
+    
+    
+    
+    private void _failed(Endpoint e, String reason) {
+        _close(e);
+        e._reconnects++;
+        e._nextAttempt = System.currentTimeMillis() + e._backoff;
+        AisPlugin.log.warn(null, e._name+": "+e._host+":"+e._port+": "+reason+
+            " - retry in "+(e._backoff / 1000)+" s");
+        e._backoff = Math.min(e._backoff * 2, e._maxBackoff);
+    }
+    
+    
+    
+    private void _close(Endpoint e) {
+        if (e._ch != null) {
+            try { e._ch.close(); }
+            catch (IOException ex) {}
+            e._ch = null;
+        }
+        if (e._buf != null) {
+            e._buf.clear();
+            if (_pool.size() < MAX_POOLED)
+                _pool.add(e._buf);
+            e._buf = null;
+        }
+        e._connected = false;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Load shedding for an AIS channel when packets arrive faster than they can be 
+ * processed. The ingest workers report how long packets take to process. From 
+ * that and the queue depth, the lag (time to process what is queued) is estimated 
+ * once a second. 
+ * 
+ * Shedding is off unless channel.<id>.overload.lag is set (ms, e.g. 2000). If the 
+ * lag is above that, or the queues are more than channel.<id>.overload.fill percent 
+ * full (default 50), 
+ * shedding goes up one level, and down one level when the lag has been below half 
+ * of that for the hold time (5 s): 
+ *   1 - Position reports from vessels at anchor or moored are throttled.
+ *   2 - Position reports from class B vessels are throttled as well.
+ * Throttled vessels get one position per channel.<id>.overload.interval seconds 
+ * (default 120). SAR (ship type 51), law enforcement (55) and AIS-SART (nav status 14) 
+ * are never shed. 
+ */
+
+public class OverloadController
+{
+    public static final int NORMAL = 0, SHED_MOORED = 1, SHED_CLASS_B = 2;
+    private static final String[] LEVELS = {"normal", "moored", "classB"};
+    private static final long SAMPLE_INTERVAL = 1000, HOLD_TIME = 5000;
+    
+    private final AisChannel _chan;
+    private final long _maxLag;
+    private final int _maxFill;
+    private final long _interval;
+    
+    private volatile int _level = NORMAL;
+    private volatile long _lag;
+    private final AtomicLong _lastSample = new AtomicLong(System.currentTimeMillis());
+    private long _lastChange;
+    
+    /* Average processing time per packet (ns), moving average */
+    private volatile double _serviceTime = 0;
+    
+    
+    public OverloadController(AisChannel chan, long maxLag, int maxFill, long interval) {
+        _chan = chan;
+        _maxLag = maxLag;
+        _maxFill = maxFill;
+        _interval = interval;
+    }
+    
+    
+    public int level()
+       { return _level; }
+       
+    public String levelText()
+       { return LEVELS[_level]; }
+       
+    /** Estimated queue lag (ms) at the last sample. */
+    public long lag()
+       { return _lag; }
+       
+    /** Min time (ms) between positions of a throttled vessel. */
+    public long interval()
+       { return _interval; }
+       
+       
+       
+    /**
+     * Report the processing of a batch of packets. Called by ingest workers, 
+     * also when idle (n = 0), so that the level can go down.
+     */
+    public void processed(int n, long nanos, long now) {
+        if (n > 0) {
+            double t = (double) nanos / n;
+            double st = _serviceTime;
+            _serviceTime = (st == 0 ? t : st * 0.9 + t * 0.1);
+        }
+        
+        long last = _lastSample.get();
+        if (now - last >= SAMPLE_INTERVAL && _lastSample.compareAndSet(last, now))
+            _sample(now);
+    }
+    
+    
+    
+    private void _sample(long now) {
+        long depth = 0, capacity = 0;
+        var ingest = _chan._ingest;
+        if (ingest == null)
+            return;
+        for (IngestQueue q : ingest) {
+            depth += q.depth();
+            capacity += q.capacity();
+        }
+        /* Workers run in parallel */
+        long lag = (long) (depth * _serviceTime / 1000000 / ingest.length);
+        int fill = (int) (capacity == 0 ? 0 : depth * 100 / capacity);
+        _lag = lag;
+        
+        int level = _level;
+        if ((lag > _maxLag || fill > _maxFill) && level < SHED_CLASS_B) {
+            if (level == NORMAL || now - _lastChange >= HOLD_TIME)
+                _change(level + 1, now, lag, fill);
+        }
+        else if (lag < _maxLag / 2 && fill < _maxFill / 2 && level > NORMAL && now - _lastChange >= HOLD_TIME)
+            _change(level - 1, now, lag, fill);
+    }
+    
+    
+    private void _change(int level, long now, long lag, int fill) {
+        _level = level;
+        _lastChange = now;
+        AisPlugin.log.info(null, "["+_chan.getIdent()+"] Overload: shedding level "+level+" ("+LEVELS[level]+
+            "), lag "+lag+" ms, queue "+fill+"% full");
+    }
+    
+    
+    
+    /**
+     * Return true if a position report should be dropped at the current level. 
+     * Decided from the payload and what is known about the vessel, without 
+     * decoding the message. 
+     * @param payload Armored payload of the message.
+     */
+    public boolean shed(CharSequence payload, long now) {
+        int level = _level;
+        if (level == NORMAL || payload.length() < 7)
+            return false;
+        int msgId = AisPayload.sixbit(payload.charAt(0));
+        boolean classA = (msgId >= 1 && msgId <= 3);
+        if (!classA && msgId != 18 && msgId != 19)
+            return false;
+            
+        long mmsi = AisPayload.mmsi(payload);
+        int type, vnav;
+        long updated;
+        var store = AisPlugin.store;
+        if (store != null) {
+            int s = store.find(mmsi);
+            if (s < 0 || !store.hasPos(s))
+                return false;
+            type = store.type(s);
+            vnav = store.navStatus(s);
+            updated = store.time(s);
+        }
+        else {
+            AisVessel v = AisPlugin.index.get(mmsi);
+            if (v == null || v.getPosition() == null)
+                return false;
+            type = v.getType();
+            vnav = v.getNavStatus();
+            updated = (v.getUpdated() == null ? 0 : v.getUpdated().getTime());
+        }
+        /* Nav status is bits 38-41 of class A position reports */
+        int nav = (classA ? AisPayload.sixbit(payload.charAt(6)) & 0x0f : vnav);
+        if (type == 51 || type == 55 || nav == 14 || vnav == 14)
+            return false;
+            
+        boolean throttle = (nav == 1 || nav == 5) || (level >= SHED_CLASS_B && !classA);
+        if (!throttle)
+            return false;
+        return updated > 0 && now - updated < _interval;
+    }
+}
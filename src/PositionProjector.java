@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import no.polaric.aprsd.point.*;
+
+
+/**
+ * Dead reckoning: Current positions of vessels extrapolated from the last 
+ * reported position, speed and course over ground. Class B and long range reports are 
+ * minutes apart, so vessels would otherwise jump on the map. 
+ * 
+ * All vessels are projected at once, at most once per tick (ais.projection.tick, 
+ * ms, default 1000), and queries in the same tick share the result. The inputs 
+ * are copied to arrays, and projected in one loop over the arrays. Reports older 
+ * than ais.projection.max seconds (default 300) are not extrapolated. 
+ * Distances are short, so a flat earth approximation is used. 
+ * 
+ * A projection is ordered in rows of 0.1 degrees latitude, so a bounding box 
+ * query only looks at the vessels in the rows it covers. 
+ */
+
+public class PositionProjector
+{
+    /* Sine and cosine of course in whole degrees */
+    private static final double[] SIN = new double[360], COS = new double[360];
+    static {
+        for (int i = 0; i < 360; i++) {
+            SIN[i] = Math.sin(Math.toRadians(i));
+            COS[i] = Math.cos(Math.toRadians(i));
+        }
+    }
+    
+    
+    private static final int ROWS = 1800;
+    
+    
+    /** Projected positions of all vessels at a time. Not changed once made. */
+    public static class Projection {
+        public final long time;
+        public final int size;
+        public final long[] mmsi;
+        public final double[] lat, lon;
+        /* Course is the heading, for display. Positions are projected along cog */
+        public final int[] speed, course, cog;
+        /* Time of the reported position */
+        public final long[] reported;
+        public final boolean[] projected;
+        
+        /* Indexes ordered by latitude row, and where each row starts */
+        private final int[] _order;
+        private final int[] _rowStart = new int[ROWS + 1];
+        
+        Projection(long t, int n) {
+            time = t;
+            size = n;
+            mmsi = new long[n];
+            lat = new double[n];
+            lon = new double[n];
+            speed = new int[n];
+            course = new int[n];
+            cog = new int[n];
+            reported = new long[n];
+            projected = new boolean[n];
+            _order = new int[n];
+        }
+        
+        
+        private static int _row(double lat)
+           { return Math.max(0, Math.min(ROWS - 1, (int) ((lat + 90) * 10))); }
+        
+        
+        /* Order the vessels by latitude row (counting sort) */
+        void index() {
+            int[] start = _rowStart;
+            for (int i = 0; i < size; i++)
+                start[_row(lat[i]) + 1]++;
+            for (int r = 0; r < ROWS; r++)
+                start[r + 1] += start[r];
+            int[] next = Arrays.copyOf(start, ROWS);
+            for (int i = 0; i < size; i++)
+                _order[next[_row(lat[i])]++] = i;
+        }
+        
+        
+        /**
+         * Indexes of vessels with a projected position within a bounding box.
+         * If minLon > maxLon, the box crosses the 180 degree meridian. 
+         */
+        public int[] bbox(double minLat, double minLon, double maxLat, double maxLon) {
+            int[] res = new int[64];
+            int n = 0;
+            boolean wrap = minLon > maxLon;
+            int end = _rowStart[_row(maxLat) + 1];
+            for (int k = _rowStart[_row(minLat)]; k < end; k++) {
+                int i = _order[k];
+                double la = lat[i], lo = lon[i];
+                if (la < minLat || la > maxLat)
+                    continue;
+                if (wrap ? (lo < minLon && lo > maxLon) : (lo < minLon || lo > maxLon))
+                    continue;
+                if (n == res.length)
+                    res = Arrays.copyOf(res, n * 2);
+                res[n++] = i;
+            }
+            return Arrays.copyOf(res, n);
+        }
+    }
+    
+    
+    /* Position for the REST API */
+    public static class JsPos {
+        public String ident;
+        public double lat, lon;
+        public int speed, course, cog;
+        public boolean projected;
+        public long reported;
+    }
+    
+    
+    
+    private final long _tick, _max;
+    private volatile Projection _last;
+    private long _computed = 0;
+    
+    
+    /**
+     * Constructor.
+     * @param tick Length of a tick (ms). 
+     * @param max Max age (ms) of a report to be extrapolated.
+     */
+    public PositionProjector(long tick, long max) {
+        _tick = Math.max(1, tick);
+        _max = max;
+    }
+    
+    
+    /** Number of times all vessels were projected. */
+    public long computed()
+       { return _computed; }
+    
+    
+    
+    /**
+     * Get the projection for the tick of the given time. It is made if it is 
+     * not there. Positions are projected to the start of the tick. 
+     */
+    public Projection get(long now) {
+        long t = now - now % _tick;
+        Projection p = _last;
+        if (p != null && p.time == t)
+            return p;
+        synchronized (this) {
+            p = _last;
+            if (p != null && p.time == t)
+                return p;
+            p = _project(t);
+            _last = p;
+            _computed++;
+            return p;
+        }
+    }
+    
+    
+    
+    /**
+     * Projected positions of vessels within a bounding box, at the current tick.
+     */
+    public List<JsPos> bbox(double minLat, double minLon, double maxLat, double maxLon) {
+        Projection p = get(System.currentTimeMillis());
+        int[] ix = p.bbox(minLat, minLon, maxLat, maxLon);
+        List<JsPos> res = new ArrayList<JsPos>(ix.length);
+        for (int i : ix) {
+            var x = new JsPos();
+            x.ident = "MMSI:"+p.mmsi[i];
+            x.lat = p.lat[i];
+            x.lon = p.lon[i];
+            x.speed = p.speed[i];
+            x.course = p.course[i];
+            x.cog = p.cog[i];
+            x.projected = p.projected[i];
+            x.reported = p.reported[i];
+            res.add(x);
+        }
+        return res;
+    }
+    
+    
+    
+    /* Copy the last reports of all vessels, then project them */
+    private Projection _project(long now) {
+        Projection p;
+        var store = AisPlugin.store;
+        if (store != null) {
+            synchronized (store) {
+                int n = 0;
+                for (int s = 0; s < store.top(); s++)
+                    if (store.mmsi(s) >= 0 && store.hasPos(s))
+                        n++;
+                p = new Projection(now, n);
+                int i = 0;
+                for (int s = 0; s < store.top(); s++) 
+                    if (store.mmsi(s) >= 0 && store.hasPos(s)) {
+                        p.mmsi[i] = store.mmsi(s);
+                        p.lat[i] = store.lat(s);
+                        p.lon[i] = store.lon(s);
+                        p.speed[i] = store.speed(s);
+                        p.course[i] = store.course(s);
+                        p.cog[i] = store.cog(s);
+                        p.reported[i] = store.time(s);
+                        i++;
+                    }
+            }
+        }
+        else {
+            /* Each vessel's report is read once, so its fields are of one report */
+            List<AisVessel> vs = AisPlugin.index.values();
+            long[] mmsi = new long[vs.size()];
+            AisVessel.Report[] rs = new AisVessel.Report[vs.size()];
+            int n = 0;
+            for (AisVessel v : vs) {
+                AisVessel.Report r = v._report;
+                if (r == null)
+                    continue;
+                mmsi[n] = v.getMmsi();
+                rs[n++] = r;
+            }
+            p = new Projection(now, n);
+            for (int i = 0; i < n; i++) {
+                AisVessel.Report r = rs[i];
+                p.mmsi[i] = mmsi[i];
+                p.lat[i] = r.lat;
+                p.lon[i] = r.lon;
+                p.speed[i] = r.speed;
+                p.course[i] = r.course;
+                p.cog[i] = r.cog;
+                p.reported[i] = r.time;
+            }
+        }
+        project(p, now, _max);
+        p.index();
+        return p;
+    }
+    
+    
+    
+    /**
+     * Project the positions of a projection in place, from the reported time 
+     * to now. Speed is in km/h, course over ground in degrees. Reports without speed or cog, 
+     * from the future or older than max ms are not changed. 
+     */
+    static void project(Projection p, long now, long max) {
+        double[] lat = p.lat, lon = p.lon;
+        int[] speed = p.speed, cog = p.cog;
+        long[] reported = p.reported;
+        for (int i = 0; i < p.size; i++) {
+            long dt = now - reported[i];
+            int c = cog[i];
+            if (speed[i] <= 0 || c < 0 || dt <= 0 || dt > max)
+                continue;
+            c %= 360;
+            /* Angular distance in degrees */
+            double d = Math.toDegrees(speed[i] / 3.6 * dt / 1000 / VesselGrid.EARTH_RADIUS);
+            double la = lat[i] + d * COS[c];
+            double lo = lon[i] + d * SIN[c] / Math.max(0.01, Math.cos(Math.toRadians(lat[i])));
+            if (la > 90) la = 90;
+            else if (la < -90) la = -90;
+            if (lo >= 180) lo -= 360;
+            else if (lo < -180) lo += 360;
+            lat[i] = la;
+            lon[i] = lo;
+            p.projected[i] = true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import no.polaric.aprsd.*;
+
+
+/**
+ * Trail policy that drops reports that add little to the trail. A report is 
+ * compared with the last kept one: 
+ *  - It is kept if more than channel.<id>.trail.maxinterval seconds have passed (default 600).
+ *  - Vessels at anchor or moored (nav status 1 or 5) are kept only if they have moved
+ *    more than channel.<id>.trail.moored (meters, default 100). 0 turns this off.
+ *  - It is kept if the course has changed more than channel.<id>.trail.heading degrees (default 15).
+ *  - It is dropped if the vessel has moved less than channel.<id>.trail.distance meters (default 50).
+ *  - It is dropped if it is within channel.<id>.trail.drift meters (default 100) of the 
+ *    position predicted from the speed and course of the last kept report.
+ * The course is the course over ground. The heading is used only if the course 
+ * over ground is not known: It is where the bow points, not where the vessel goes.
+ */
+ 
+public class ReducingTrailPolicy implements TrailPolicy
+{
+    private final long _maxInterval;
+    private final double _moored, _distance, _drift;
+    private final int _heading;
+    
+    
+    public ReducingTrailPolicy(AprsServerConfig conf, String id) {
+        String pfx = "channel."+id+".trail.";
+        _maxInterval = conf.getIntProperty(pfx+"maxinterval", 600) * 1000L;
+        _moored = conf.getIntProperty(pfx+"moored", 100);
+        _heading = conf.getIntProperty(pfx+"heading", 15);
+        _distance = conf.getIntProperty(pfx+"distance", 50);
+        _drift = conf.getIntProperty(pfx+"drift", 100);
+    }
+    
+    
+    
+    public boolean keep(AisVessel st, long time, double lat, double lon, int speed, int course, int cog) {
+        if (st._trailTime == 0 || (_maxInterval > 0 && time - st._trailTime >= _maxInterval))
+            return _kept(st, time, lat, lon, speed, course, cog);
+            
+        /* Distance from the last kept report (equirectangular, fine at these distances) */
+        double coslat = Math.cos(Math.toRadians(st._trailLat));
+        double dn = Math.toRadians(lat - st._trailLat) * VesselGrid.EARTH_RADIUS;
+        double de = Math.toRadians(lon - st._trailLon) * VesselGrid.EARTH_RADIUS * coslat;
+        double dist = Math.sqrt(dn*dn + de*de);
+        
+        int nav = st.getNavStatus();
+        if (_moored > 0 && (nav == 1 || nav == 5))
+            return (dist >= _moored ? _kept(st, time, lat, lon, speed, course, cog) : false);
+            
+        int dir = (cog >= 0 ? cog : course);
+        int trailDir = (st._trailCog >= 0 ? st._trailCog : st._trailCourse);
+        if (_heading > 0 && dir >= 0 && trailDir >= 0) {
+            int turn = Math.abs(dir - trailDir) % 360;
+            if (turn > 180)
+                turn = 360 - turn;
+            if (turn >= _heading)
+                return _kept(st, time, lat, lon, speed, course, cog);
+        }
+        if (dist < _distance)
+            return false;
+            
+        if (_drift > 0 && st._trailSpeed >= 0 && trailDir >= 0) {
+            /* Dead reckoning from the last kept report */
+            double d = st._trailSpeed / 3.6 * (time - st._trailTime) / 1000.0;
+            double c = Math.toRadians(trailDir);
+            double en = dn - d * Math.cos(c), ee = de - d * Math.sin(c);
+            if (en*en + ee*ee <= _drift * _drift)
+                return false;
+        }
+        return _kept(st, time, lat, lon, speed, course, cog);
+    }
+    
+    
+    
+    private static boolean _kept(AisVessel st, long time, double lat, double lon, int speed, int course, int cog) {
+        st._trailTime = time;
+        st._trailLat = lat;
+        st._trailLon = lon;
+        st._trailSpeed = speed;
+        st._trailCourse = course;
+        st._trailCog = cog;
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import dk.dma.ais.packet.AisPacket;
+
+
+/**
+ * Reassembly of multi-part AIS sentences (VDM/VDO) read as lines of text. 
+ * Incomplete groups are kept in a fixed-size table of slots, keyed by sequence id
+ * and radio channel, so memory use is bounded on a lossy or malicious feed.
+ * Groups expire after a timeout. When the table is full, the oldest group
+ * is evicted.
+ * 
+ * If the pre-filter is on, messages with ids that are not used by the plugin are 
+ * dropped when the first fragment is seen, before AisLib decodes them. 
+ *
+ * Not thread safe. Each channel has one assembler, used by its reader.
+ */
+
+public class SentenceAssembler
+{
+    public static final int MAX_LINE = 512;
+    private static final int MAX_PARTS = 9;
+
+    /* Incomplete group of sentences */
+    private static class Slot {
+        boolean used;
+        int seq;
+        char radio;
+        int total, count;
+        long started;
+        boolean skip;
+        final String[] parts = new String[MAX_PARTS];
+
+        void clear() {
+            used = false;
+            skip = false;
+            for (int i = 0; i < MAX_PARTS; i++)
+                parts[i] = null;
+        }
+    }
+
+    private final Slot[] _slots;
+    private final long _timeout;
+    private final boolean _prefilter;
+    private long _lastSweep = 0;
+    private volatile long _completed, _expired, _evicted, _orphaned, _invalid, _skipped;
+
+
+    /**
+     * Constructor.
+     * @param slots Max number of incomplete groups.
+     * @param timeout Time (ms) before an incomplete group expires.
+     * @param prefilter If true, drop messages that are not used by the plugin.
+     */
+    public SentenceAssembler(int slots, long timeout, boolean prefilter) {
+        _slots = new Slot[Math.max(1, slots)];
+        for (int i = 0; i < _slots.length; i++)
+            _slots[i] = new Slot();
+        _timeout = timeout;
+        _prefilter = prefilter;
+    }
+
+
+    /** Number of multi-part groups completed. */
+    public long completed()
+       { return _completed; }
+
+    /** Number of incomplete groups that expired or were replaced by a new group with the same id. */
+    public long expired()
+       { return _expired; }
+
+    /** Number of incomplete groups evicted because the table was full. */
+    public long evicted()
+       { return _evicted; }
+
+    /** Number of fragments that did not belong to any group. */
+    public long orphaned()
+       { return _orphaned; }
+
+    /** Number of lines that were not valid AIS sentences. */
+    public long invalid()
+       { return _invalid; }
+
+    /** Number of messages dropped by the pre-filter. */
+    public long skipped()
+       { return _skipped; }
+
+
+
+    /**
+     * Add a line. Return a packet if the line completes one, otherwise null.
+     * @param line Line of text, with or without a leading comment block. 
+     * @param now Current time (epoch millis).
+     */
+    public AisPacket add(String line, long now) {
+        if (now - _lastSweep >= 1000)
+            sweep(now);
+
+        int len = line.length();
+        if (len > MAX_LINE || !validChecksum(line)) {
+            _invalid++;
+            return null;
+        }
+        /* Start of VDM/VDO sentence, after comment block if any */
+        int start = line.lastIndexOf('\\') + 1;
+        if (start + 6 > len || (line.charAt(start) != '!' && line.charAt(start) != '$') 
+              || !line.startsWith("VD", start + 3)) {
+            _invalid++;
+            return null;
+        }
+        /* Fields: talker+type, total, number, sequence id, radio channel, payload ... */
+        int f1 = line.indexOf(',', start);
+        int f2 = (f1 < 0 ? -1 : line.indexOf(',', f1 + 1));
+        int f3 = (f2 < 0 ? -1 : line.indexOf(',', f2 + 1));
+        int f4 = (f3 < 0 ? -1 : line.indexOf(',', f3 + 1));
+        int f5 = (f4 < 0 ? -1 : line.indexOf(',', f4 + 1));
+        if (f5 < 0 || f2 != f1 + 2 || f3 != f2 + 2) {
+            _invalid++;
+            return null;
+        }
+        int total = line.charAt(f1 + 1) - '0';
+        int num = line.charAt(f2 + 1) - '0';
+        if (total < 1 || total > MAX_PARTS || num < 1 || num > total) {
+            _invalid++;
+            return null;
+        }
+        boolean skip = false;
+        if (_prefilter && num == 1 && f5 + 1 < len && !AisPayload.supported(AisPayload.sixbit(line.charAt(f5 + 1)))) {
+            _skipped++;
+            skip = true;
+        }
+        if (total == 1)
+            return (skip ? null : packet(line));
+
+        int seq = (f4 > f3 + 1 ? line.charAt(f3 + 1) : -1);
+        char radio = (f5 > f4 + 1 ? line.charAt(f4 + 1) : ' ');
+        Slot s = find(seq, radio);
+
+        if (num == 1) {
+            if (s != null) {
+                /* A new group with the same id: The old one is incomplete */
+                _expired++;
+                s.clear();
+            }
+            else
+                s = allocate();
+            s.used = true;
+            s.seq = seq;
+            s.radio = radio;
+            s.total = total;
+            s.count = 0;
+            s.started = now;
+            s.skip = skip;
+        }
+        else if (s != null && s.skip && s.total == total && s.count == num - 1) {
+            /* Rest of a message dropped by the pre-filter */
+            if (++s.count == s.total)
+                s.clear();
+            return null;
+        }
+        else if (s == null || s.total != total || s.parts[num - 1] != null || s.parts[num - 2] == null) {
+            /* Fragment without the preceding ones */
+            _orphaned++;
+            if (s != null) {
+                _expired++;
+                s.clear();
+            }
+            return null;
+        }
+
+        s.count++;
+        if (s.skip)
+            return null;
+        s.parts[num - 1] = line;
+        if (s.count < s.total)
+            return null;
+
+        StringBuilder sb = new StringBuilder(len * total + 2 * total);
+        for (int i = 0; i < total; i++) {
+            if (i > 0)
+                sb.append("\r\n");
+            sb.append(s.parts[i]);
+        }
+        s.clear();
+        _completed++;
+        return packet(sb.toString());
+    }
+
+
+
+    private AisPacket packet(String lines) {
+        try {
+            return AisPacket.from(lines);
+        }
+        catch (Exception e) {
+            _invalid++;
+            return null;
+        }
+    }
+
+
+
+    private Slot find(int seq, char radio) {
+        for (Slot s : _slots)
+            if (s.used && s.seq == seq && s.radio == radio)
+                return s;
+        return null;
+    }
+
+
+
+    /* Find a free slot. If there is none, evict the oldest group. */
+    private Slot allocate() {
+        Slot oldest = null;
+        for (Slot s : _slots) {
+            if (!s.used)
+                return s;
+            if (oldest == null || s.started < oldest.started)
+                oldest = s;
+        }
+        _evicted++;
+        oldest.clear();
+        return oldest;
+    }
+
+
+
+    /** Remove groups older than the timeout. */
+    public void sweep(long now) {
+        _lastSweep = now;
+        for (Slot s : _slots)
+            if (s.used && now - s.started > _timeout) {
+                _expired++;
+                s.clear();
+            }
+    }
+
+
+
+    /**
+     * Check the NMEA checksum of the sentence in a line: XOR of the characters 
+     * between the start character and '*'. A comment block before the sentence 
+     * is not checked. 
+     */
+    public static boolean validChecksum(String line) {
+        int start = line.lastIndexOf('\\') + 1;
+        int star = line.lastIndexOf('*');
+        if (star < start + 1 || star + 3 > line.length())
+            return false;
+        int sum = 0;
+        for (int i = start + 1; i < star; i++)
+            sum ^= line.charAt(i);
+        int hi = Character.digit(line.charAt(star + 1), 16);
+        int lo = Character.digit(line.charAt(star + 2), 16);
+        return hi >= 0 && lo >= 0 && ((hi << 4) | lo) == sum;
+    }
+}
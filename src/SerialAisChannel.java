@@ -29,14 +29,19 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.*;
 
 
 /**
- * AIS Channel using serial port connection.
+ * AIS Channel using serial port connection. Lines are read by an AisLineReader.
+ * If the port is changed while the channel is active, the old port is read until 
+ * the new one delivers valid data. 
  */
  
 public class SerialAisChannel extends AisChannel
 {
     private   String    _port;
     
-    transient private   AisReader  reader;
+    transient private   AisLineReader  reader;
+    
+    /* Reader of new port after reconfiguration, until it takes over */
+    transient private   AisLineReader  _nextReader;
     
         
     public SerialAisChannel(AprsServerConfig conf, String id) 
@@ -50,8 +55,7 @@ public class SerialAisChannel extends AisChannel
      */
     
     @JsonTypeName("AIS-SERIAL")
-    public static class JsConfig extends Channel.JsConfig {
-        public long messages, vessels;
+    public static class JsConfig extends AisChannel.JsConfig {
         public String port;
     }
        
@@ -59,8 +63,7 @@ public class SerialAisChannel extends AisChannel
     @Override
     public JsConfig getJsConfig() {
         var cnf = new JsConfig();
-        cnf.messages = _messages;
-        cnf.vessels = _vessels; 
+        setCounters(cnf);
         cnf.type  = "AIS-SERIAL";
         cnf.port  = _conf.getProperty("channel."+getIdent()+".port", "/dev/ttyUSB0");
         return cnf;
@@ -72,6 +75,77 @@ public class SerialAisChannel extends AisChannel
         var cnf = (JsConfig) ccnf;
         var props = _conf.config();
         props.setProperty("channel."+getIdent()+".port", cnf.port);
+        if (_state != State.OFF)
+            _reconfigure();
+    }
+    
+    
+    
+    /* Open the new port, if changed. Its reader takes over when it delivers valid data */
+    private synchronized void _reconfigure() {
+        String port = _port;
+        getConfig();
+        if (port.equals(_port))
+            return;
+        _stopNext();
+        _conf.log().info("AisChannel", chId()+"Reconfiguring AIS serial channel: "+getIdent()+" ("+_port+
+            "), using "+port+" until new port delivers data");
+        try {
+            _nextReader = _startReader(candidateReader());
+        }
+        catch (Exception e) {
+            cancelCandidate();
+            _conf.log().error("AisChannel", chId()+"Cannot open new port: "+e);
+        }
+    }
+    
+    
+    
+    @Override
+    protected Runnable readerSwitched() {
+        var old = reader;
+        reader = _nextReader;
+        _nextReader = null;
+        return () -> _stop(old);
+    }
+    
+    
+    
+    /* Stop a new reader that has not taken over */
+    private void _stopNext() {
+        cancelCandidate();
+        if (_nextReader != null) {
+            _nextReader.stopReader();
+            _nextReader = null;
+        }
+    }
+    
+    
+    
+    /* Open the port and start reading. Read lines here, so multi-part sentences are reassembled by the channel */
+    private AisLineReader _startReader(int gen) throws IOException {
+        var rd = new AisLineReader(new FileInputStream(_port), line -> {
+            if (acceptLine(gen, line))
+                receiveLine(line);
+        }, "AisSerial-"+getIdent());
+        rd.start();
+        return rd;
+    }
+    
+    
+    
+    /* Stop a reader and wait for it */
+    private void _stop(AisLineReader rd) {
+        if (rd == null)
+            return;
+        rd.stopReader();
+        try {
+            rd.join();
+        }
+        catch (InterruptedException e) {
+            _conf.log().warn("AisChannel", chId()+"Interrupted while stopping AIS serial channel: "+getIdent());
+            Thread.currentThread().interrupt(); // Restore interrupted status
+        }
     }
     
        
@@ -95,15 +169,9 @@ public class SerialAisChannel extends AisChannel
         try {
             getConfig();
             _conf.log().info("AisChannel", chId()+"Activating AIS serial channel: "+getIdent()+" ("+_port+")");
-            reader = AisReaders.createReaderFromInputStream(new FileInputStream(_port));
-            reader.registerPacketHandler(new Consumer<AisPacket>() {
-               @Override
-               public void accept(AisPacket packet) {
-                   handlePacket(packet);
-               }
-            });
-            
-            reader.start();
+            int gen = firstReader();
+            startIngest();
+            reader = _startReader(gen);
             _state = State.STARTING;
         } catch (Exception e) {
             _state = State.OFF;
@@ -118,6 +186,7 @@ public class SerialAisChannel extends AisChannel
                     _conf.log().warn("AisChannel", chId()+"Error cleaning up reader during failed activation: "+cleanupEx);
                 }
             }
+            stopIngest();
             throw new RuntimeException("Failed to activate AIS serial channel: "+getIdent(), e);
         }
     }
@@ -128,19 +197,15 @@ public class SerialAisChannel extends AisChannel
     @Override
     public void deActivate() {
         _conf.log().info("AisChannel", chId()+"Dectivating AIS serial channel: "+getIdent());
-        try {
-            if (reader!=null) {
-                reader.stopReader();
-                reader.join();
-                reader = null;
-            }
-           _state = State.OFF;
-        } 
-        catch (InterruptedException e) {
-            _conf.log().warn("AisChannel", chId()+"Interrupted while stopping AIS serial channel: "+getIdent());
-            Thread.currentThread().interrupt(); // Restore interrupted status
-            _state = State.OFF;
+        AisLineReader rd;
+        synchronized (this) {
+            _stopNext();
+            rd = reader;
+            reader = null;
         }
+        _stop(rd);
+        stopIngest();
+        _state = State.OFF;
     }
     
     
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+
+
+/**
+ * Vessel that is a view of a slot in the VesselStore. Name, callsign, type and
+ * navigational status are read from the columns of the store, under its lock.
+ * The view is in the point DB like other vessels, so the map, search and trails
+ * see it. The position shown on the map and saved to the trail is kept by the
+ * point, as for other vessels.
+ *
+ * When the vessel is removed from the store, the view is detached: The values
+ * are copied to the object, so it can still be used where it is referenced.
+ */
+
+public class StoreVessel extends AisVessel
+{
+    private final VesselStore _store;
+
+    /* Slot in the store, -1 if detached. Guarded by the store */
+    private int _slot;
+
+
+    /** A view that is not yet attached to a slot. Until then, it has the values itself. */
+    StoreVessel(VesselStore store, long mmsi) {
+        super(null, mmsi);
+        _store = store;
+        _slot = -1;
+    }
+
+
+    /** Attach to a slot. To be called by the store, with its lock held. */
+    void attach(int s)
+       { _slot = s; }
+
+
+    /**
+     * Copy the values from the store and detach from the slot.
+     * To be called by the store, with its lock held.
+     */
+    void detach() {
+        super.setName(_store.name(_slot));
+        super.setCallsign(_store.callsign(_slot));
+        super.setType(_store.type(_slot));
+        super.setNavStatus(_store.navStatus(_slot));
+        _slot = -1;
+    }
+
+
+    @Override public String getName() {
+        synchronized (_store) {
+            if (_slot >= 0)
+                return _store.name(_slot);
+        }
+        return super.getName();
+    }
+
+    @Override public void setName(String n) {
+        synchronized (_store) {
+            if (_slot >= 0) {
+                _store.setName(_slot, n);
+                return;
+            }
+        }
+        super.setName(n);
+    }
+
+    @Override public String getCallsign() {
+        synchronized (_store) {
+            if (_slot >= 0)
+                return _store.callsign(_slot);
+        }
+        return super.getCallsign();
+    }
+
+    @Override public void setCallsign(String cs) {
+        synchronized (_store) {
+            if (_slot >= 0) {
+                _store.setCallsign(_slot, cs);
+                _descr = null;
+                return;
+            }
+        }
+        super.setCallsign(cs);
+    }
+
+    @Override public int getType() {
+        synchronized (_store) {
+            if (_slot >= 0)
+                return _store.type(_slot);
+        }
+        return super.getType();
+    }
+
+    @Override public void setType(int t) {
+        synchronized (_store) {
+            if (_slot >= 0) {
+                _store.setType(_slot, t);
+                _descr = null;
+                return;
+            }
+        }
+        super.setType(t);
+    }
+
+    @Override public int getNavStatus() {
+        synchronized (_store) {
+            if (_slot >= 0)
+                return _store.navStatus(_slot);
+        }
+        return super.getNavStatus();
+    }
+
+    @Override public void setNavStatus(int s) {
+        synchronized (_store) {
+            if (_slot >= 0) {
+                _store.setNavStatus(_slot, s);
+                return;
+            }
+        }
+        super.setNavStatus(s);
+    }
+}
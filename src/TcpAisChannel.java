@@ -15,6 +15,7 @@
 package no.polaric.ais;
 import java.io.*;
 import java.util.*;
+import java.nio.charset.StandardCharsets;
 import no.polaric.core.*;
 import no.polaric.core.httpd.*;
 import no.polaric.aprsd.*;
@@ -29,15 +30,36 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.*;
 
 
 /**
- * AIS Channel using TCP connection.
+ * AIS Channel using TCP connection. By default each channel has its own reader 
+ * thread (AisLineReader), which reconnects after 10 seconds if the connection is lost. 
+ * If channel.<id>.nio is true, the channel is read by the plugin's NioAisReader, 
+ * which serves all such channels on one thread. Reconnects are then done with 
+ * exponential backoff, up to channel.<id>.reconnect.max seconds. Note that with 
+ * queue.policy "block", a full queue holds up all NIO channels. 
+ * 
+ * Either way lines are read by the channel, so multi-part sentences are reassembled 
+ * by its SentenceAssembler, and lost fragments show up in its counters.
+ * 
+ * If host, port or nio is changed while the channel is active, a new connection is 
+ * made, and the old one is used until the new one delivers valid data. The ingest 
+ * queues, counters and vessels are kept.
  */
  
 public class TcpAisChannel extends AisChannel
 {
+    private static final long RECONNECT_INTERVAL = 10000;
+    
     private   String    _host; 
     private   int       _port;
+    private   boolean   _nio;
+    private   int       _maxBackoff;
+    
+    transient private   AisLineReader  reader;
+    transient private   NioAisReader.Endpoint _endpoint;
     
-    transient private   AisTcpReader  reader;
+    /* New reader after reconfiguration, until it takes over */
+    transient private   AisLineReader  _nextReader;
+    transient private   NioAisReader.Endpoint _nextEndpoint;
     
         
     public TcpAisChannel(AprsServerConfig conf, String id) 
@@ -51,21 +73,33 @@ public class TcpAisChannel extends AisChannel
      */
     
     @JsonTypeName("AIS-TCP")
-    public static class JsConfig extends Channel.JsConfig {
-        public long messages, vessels;
+    public static class JsConfig extends AisChannel.JsConfig {
         public int port; 
         public String host;
+        public boolean nio;
+        public boolean connected;
+        public long reconnects;
     }
        
        
     @Override
     public JsConfig getJsConfig() {
         var cnf = new JsConfig();
-        cnf.messages = _messages;
-        cnf.vessels = _vessels; 
+        setCounters(cnf);
         cnf.type  = "AIS-TCP";
         cnf.host  = _conf.getProperty("channel."+getIdent()+".host", "localhost");
         cnf.port  = _conf.getIntProperty("channel."+getIdent()+".port", 21);
+        cnf.nio   = _conf.getBoolProperty("channel."+getIdent()+".nio", false);
+        var ep = _endpoint;
+        var rd = reader;
+        if (ep != null) {
+            cnf.connected = ep.isConnected();
+            cnf.reconnects = ep.reconnects();
+        }
+        else if (rd != null) {
+            cnf.connected = rd.isConnected();
+            cnf.reconnects = rd.reconnects();
+        }
         return cnf;
     }
     
@@ -76,6 +110,67 @@ public class TcpAisChannel extends AisChannel
         var props = _conf.config();
         props.setProperty("channel."+getIdent()+".host", cnf.host);
         props.setProperty("channel."+getIdent()+".port", ""+cnf.port);
+        props.setProperty("channel."+getIdent()+".nio", ""+cnf.nio);
+        if (_state != State.OFF)
+            _reconfigure();
+    }
+    
+    
+    
+    /* 
+     * Connect with the new config, if the connection parameters changed. The 
+     * new reader takes over when it delivers valid data. 
+     */
+    private synchronized void _reconfigure() {
+        String host = _host;
+        int port = _port;
+        boolean nio = _nio;
+        getConfig();
+        if (host.equals(_host) && port == _port && nio == _nio)
+            return;
+        _stopNext();
+        _conf.log().info("AisChannel", chId()+"Reconfiguring AIS channel: "+getIdent()+" ("+_host+":"+_port+
+            "), using "+host+":"+port+" until new connection delivers data");
+        int gen = candidateReader();
+        try {
+            if (_nio)
+                _nextEndpoint = _startNio(gen);
+            else 
+                _nextReader = _startReader(gen);
+        }
+        catch (Exception e) {
+            cancelCandidate();
+            _conf.log().error("AisChannel", chId()+"Cannot connect with new config: "+e);
+        }
+    }
+    
+    
+    
+    @Override
+    protected Runnable readerSwitched() {
+        var oldReader = reader;
+        var oldEndpoint = _endpoint;
+        reader = _nextReader;
+        _endpoint = _nextEndpoint;
+        _nextReader = null;
+        _nextEndpoint = null;
+        return () -> _stop(oldReader, oldEndpoint);
+    }
+    
+    
+    
+    /* Stop a new reader that has not taken over */
+    private void _stopNext() {
+        cancelCandidate();
+        var r = _nextReader;
+        var ep = _nextEndpoint;
+        _nextReader = null;
+        _nextEndpoint = null;
+        if (r != null || ep != null) {
+            Thread t = new Thread(() -> _stop(r, ep), "AisRetire-"+getIdent());
+            t.setDaemon(true);
+            t.start();
+        }
     }
     
        
@@ -89,6 +184,8 @@ public class TcpAisChannel extends AisChannel
         String id = getIdent();
         _host = _conf.getProperty("channel."+id+".host", "localhost");
         _port = _conf.getIntProperty("channel."+id+".port", 4030);
+        _nio = _conf.getBoolProperty("channel."+id+".nio", false);
+        _maxBackoff = _conf.getIntProperty("channel."+id+".reconnect.max", 60);
     }
    
  
@@ -100,21 +197,21 @@ public class TcpAisChannel extends AisChannel
         try {
             getConfig();
             _conf.log().info("AisChannel", chId()+"Activating AIS channel: "+getIdent()+" ("+_host+":"+_port+")");
-            reader = AisReaders.createReader(_host, _port);
-            reader.setReconnectInterval(10000);
-            reader.registerPacketHandler(new Consumer<AisPacket>() {
-               @Override
-               public void accept(AisPacket packet) {
-                   handlePacket(packet);
-               }
-            });
-            
-            reader.start();
+            int gen = firstReader();
+            startIngest();
+            if (_nio)
+                _endpoint = _startNio(gen);
+            else
+                reader = _startReader(gen);
             _state = State.STARTING;
         } catch (Exception e) {
             _state = State.OFF;
             _conf.log().error("AisChannel", chId()+"Failed to activate AIS channel: "+getIdent()+" - "+e);
             e.printStackTrace(System.out);
+            if (_endpoint != null) {
+                NioAisReader.remove(_endpoint);
+                _endpoint = null;
+            }
             // Clean up reader if it was created but activation failed
             if (reader != null) {
                 try {
@@ -124,29 +221,76 @@ public class TcpAisChannel extends AisChannel
                     _conf.log().warn("AisChannel", chId()+"Error cleaning up reader during failed activation: "+cleanupEx);
                 }
             }
+            stopIngest();
             throw new RuntimeException("Failed to activate AIS channel: "+getIdent(), e);
         }
     }
     
 
     
+    /* Start reading with the channel's NIO reader. Lines are reassembled by the channel */
+    private NioAisReader.Endpoint _startNio(int gen) throws IOException {
+        var ep = new NioAisReader.Endpoint(chId()+getIdent(), _host, _port, _maxBackoff * 1000L, 
+            (buf, len) -> {
+                if (skipLine(buf, len))
+                    return;
+                String line = new String(buf, 0, len, StandardCharsets.US_ASCII);
+                if (acceptLine(gen, line))
+                    receiveLine(line);
+            });
+        NioAisReader.add(ep);
+        return ep;
+    }
+    
+    
+    
+    /* Start a reader thread. Lines are reassembled by the channel */
+    private AisLineReader _startReader(int gen) {
+        var rd = new AisLineReader(AisLineReader.tcp(_host, _port), RECONNECT_INTERVAL, line -> {
+            if (acceptLine(gen, line))
+                receiveLine(line);
+        }, "AisTcp-"+getIdent());
+        rd.start();
+        return rd;
+    }
+    
+    
+    
+    /* Stop a reader and wait for it */
+    private void _stop(AisLineReader rd, NioAisReader.Endpoint ep) {
+        if (ep != null)
+            NioAisReader.remove(ep);
+        if (rd != null) {
+            rd.stopReader();
+            try {
+                rd.join();
+            }
+            catch (InterruptedException e) {
+                _conf.log().warn("AisChannel", chId()+"Interrupted while stopping AIS channel: "+getIdent());
+                Thread.currentThread().interrupt(); // Restore interrupted status
+            }
+        }
+    }
+    
+    
+
     /** Stop the service */
     @Override
     public void deActivate() {
         _conf.log().info("AisChannel", chId()+"Dectivating AIS channel: "+getIdent());
-        try {
-            if (reader!=null) {
-                reader.stopReader();
-                reader.join();
-                reader = null;
-            }
-           _state = State.OFF;
-        } 
-        catch (InterruptedException e) {
-            _conf.log().warn("AisChannel", chId()+"Interrupted while stopping AIS channel: "+getIdent());
-            Thread.currentThread().interrupt(); // Restore interrupted status
-            _state = State.OFF;
+        AisLineReader rd;
+        NioAisReader.Endpoint ep;
+        synchronized (this) {
+            _stopNext();
+            rd = reader;
+            ep = _endpoint;
+            reader = null;
+            _endpoint = null;
         }
+        /* Joining may take seconds, and is not done with the channel locked */
+        _stop(rd, ep);
+        stopIngest();
+        _state = State.OFF;
     }
     
     
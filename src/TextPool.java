@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+
+
+/**
+ * Bounded pool of names and callsigns. Text fields of AIS messages are padded 
+ * with '@' and spaces. The trimmed text is looked up in the pool without 
+ * creating a new string, so vessels with the same name share one instance and 
+ * repeated static data does not allocate. 
+ * 
+ * The pool is a direct mapped cache: A new text replaces the one in its slot. 
+ * Slots are read and written without locking. A race may cause a miss, but 
+ * never a wrong result, since strings are immutable and compared before use.
+ */
+
+public class TextPool
+{
+    private final String[] _slots;
+    private final int _mask;
+    
+    
+    public TextPool(int size) {
+        int cap = 16;
+        while (cap < size)
+            cap <<= 1;
+        _slots = new String[cap];
+        _mask = cap - 1;
+    }
+    
+    
+    
+    /* End of the text: Before the first '@', without trailing spaces */
+    private static int _end(String raw, int start) {
+        int end = raw.indexOf('@');
+        if (end < 0)
+            end = raw.length();
+        while (end > start && raw.charAt(end - 1) <= ' ')
+            end--;
+        return end;
+    }
+    
+    private static int _start(String raw) {
+        int start = 0;
+        while (start < raw.length() && raw.charAt(start) <= ' ')
+            start++;
+        return start;
+    }
+    
+    
+    
+    /**
+     * Return true if raw, trimmed like AisMessage.trimText, is equal to text. 
+     * Does not allocate. 
+     */
+    public static boolean same(String raw, String text) {
+        if (raw == null || text == null)
+            return raw == text;
+        int start = _start(raw);
+        int n = text.length();
+        if (!raw.regionMatches(start, text, 0, n))
+            return false;
+        /* The rest must be padding */
+        for (int i = start + n; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '@')
+                break;
+            if (c > ' ')
+                return false;
+        }
+        return true;
+    }
+    
+    
+    
+    /**
+     * Trim raw like AisMessage.trimText and return the pooled instance of the result.
+     * Null if raw is null. 
+     */
+    public String get(String raw) {
+        if (raw == null)
+            return null;
+        int start = _start(raw);
+        int end = _end(raw, start);
+        if (end == start)
+            return "";
+            
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + raw.charAt(i);
+        int slot = (h ^ (h >>> 16)) & _mask;
+        
+        String s = _slots[slot];
+        if (s != null && s.length() == end - start && raw.regionMatches(start, s, 0, end - start))
+            return s;
+        s = (start == 0 && end == raw.length() ? raw : raw.substring(start, end));
+        _slots[slot] = s;
+        return s;
+    }
+}
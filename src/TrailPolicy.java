@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import no.polaric.aprsd.*;
+
+
+/**
+ * Decides which position reports of a vessel become trail points. Reports that 
+ * are not kept still update the vessel's position if the change is visible, but 
+ * nothing is saved to the trail (see AisChannel.storePos).
+ * A channel has one policy, set by channel.<id>.trail.policy: "all" (default), 
+ * "reduce" (ReducingTrailPolicy) or the name of a class with a constructor 
+ * (AprsServerConfig, String channel-id).
+ * 
+ * Policies are shared by the ingest workers of a channel. State about a vessel 
+ * should be kept in the vessel, which is only updated by one worker at a time.
+ */
+ 
+public interface TrailPolicy
+{
+    /**
+     * Return true if the report should be saved to the trail.
+     * @param speed Speed in km/h, -1 if not known.
+     * @param course Heading in degrees, -1 if not known.
+     * @param cog Course over ground in degrees, -1 if not known.
+     */
+    public boolean keep(AisVessel st, long time, double lat, double lon, int speed, int course, int cog);
+    
+    
+    /** Keep all reports. */
+    public static final TrailPolicy ALL = (st, time, lat, lon, speed, course, cog) -> true;
+    
+    
+    
+    /**
+     * Create the trail policy of a channel from its config.
+     */
+    public static TrailPolicy create(AprsServerConfig conf, String id) {
+        String name = conf.getProperty("channel."+id+".trail.policy", "all").trim();
+        if (name.equals("all"))
+            return ALL;
+        if (name.equals("reduce"))
+            return new ReducingTrailPolicy(conf, id);
+        try {
+            return (TrailPolicy) Class.forName(name)
+                .getConstructor(AprsServerConfig.class, String.class).newInstance(conf, id);
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException("Cannot create trail policy '"+name+"': "+e, e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import no.polaric.core.*;
+import no.polaric.aprsd.*;
+import com.fasterxml.jackson.annotation.*;
+
+
+/**
+ * AIS Channel receiving NMEA over UDP, e.g. from AIS-catcher. A datagram may 
+ * contain several sentences. Datagrams are read into a reused buffer and split 
+ * into lines at the byte level. If channel.<id>.group is set, the channel joins 
+ * that multicast group.
+ */
+ 
+public class UdpAisChannel extends AisChannel implements Runnable
+{
+    private static final int MAX_DATAGRAM = 65536;
+    private static final long RATE_INTERVAL = 10000;
+    
+    private   String    _bind, _group, _ifname;
+    private   int       _port, _rcvbuf;
+    
+    transient private   DatagramChannel  _sock;
+    transient private   Thread  _reader;
+    transient private   volatile boolean _stopped;
+    transient private   volatile long _datagrams, _bytes, _truncated;
+    transient private   volatile double _dgRate, _byteRate;
+    
+        
+    public UdpAisChannel(AprsServerConfig conf, String id) 
+    {
+        super(conf, id);
+    }
+   
+       
+    /* 
+     * Information about config to be exchanged in REST API
+     */
+    
+    @JsonTypeName("AIS-UDP")
+    public static class JsConfig extends AisChannel.JsConfig {
+        public int port;
+        public String bind, group, iface;
+        public long datagrams, bytes, truncated, lostFragments;
+        public double datagramRate, byteRate;
+    }
+       
+       
+    @Override
+    public JsConfig getJsConfig() {
+        var cnf = new JsConfig();
+        setCounters(cnf);
+        String pfx = "channel."+getIdent();
+        cnf.type  = "AIS-UDP";
+        cnf.port  = _conf.getIntProperty(pfx+".port", 10110);
+        cnf.bind  = _conf.getProperty(pfx+".bind", "");
+        cnf.group = _conf.getProperty(pfx+".group", "");
+        cnf.iface = _conf.getProperty(pfx+".interface", "");
+        cnf.datagrams = _datagrams;
+        cnf.bytes = _bytes;
+        cnf.truncated = _truncated;
+        /* UDP loss shows up as fragments without the rest of their message */
+        cnf.lostFragments = cnf.orphaned + cnf.expired;
+        cnf.datagramRate = _dgRate;
+        cnf.byteRate = _byteRate;
+        return cnf;
+    }
+    
+    
+    @Override
+    public void setJsConfig(Channel.JsConfig ccnf) {
+        var cnf = (JsConfig) ccnf;
+        var props = _conf.config();
+        String pfx = "channel."+getIdent();
+        props.setProperty(pfx+".port", ""+cnf.port);
+        props.setProperty(pfx+".bind", cnf.bind == null ? "" : cnf.bind);
+        props.setProperty(pfx+".group", cnf.group == null ? "" : cnf.group);
+        props.setProperty(pfx+".interface", cnf.iface == null ? "" : cnf.iface);
+    }
+    
+       
+   
+    /**
+     * Load/reload configuration parameters. Called each time channel is activated. 
+     */
+    @Override
+    protected void getConfig()
+    {      
+        String id = getIdent();
+        _port = _conf.getIntProperty("channel."+id+".port", 10110);
+        _bind = _conf.getProperty("channel."+id+".bind", "").trim();
+        _group = _conf.getProperty("channel."+id+".group", "").trim();
+        _ifname = _conf.getProperty("channel."+id+".interface", "").trim();
+        _rcvbuf = _conf.getIntProperty("channel."+id+".rcvbuf", 1048576);
+    }
+   
+ 
+ 
+    /** Start the service */
+    @Override
+    public void activate(AprsServerConfig a) {
+        try {
+            getConfig();
+            _conf.log().info("AisChannel", chId()+"Activating AIS UDP channel: "+getIdent()+" (port "+_port
+                + (_group.isEmpty() ? "" : ", group "+_group)+")");
+            _stopped = false;
+            _sock = _open();
+            startIngest();
+            _reader = new Thread(this, "AisUdp-"+getIdent());
+            _reader.setDaemon(true);
+            _reader.start();
+            _state = State.STARTING;
+        } catch (Exception e) {
+            _state = State.OFF;
+            _conf.log().error("AisChannel", chId()+"Failed to activate AIS UDP channel: "+getIdent()+" - "+e);
+            _close();
+            stopIngest();
+            throw new RuntimeException("Failed to activate AIS UDP channel: "+getIdent(), e);
+        }
+    }
+    
+    
+    
+    private DatagramChannel _open() throws IOException {
+        InetAddress group = (_group.isEmpty() ? null : InetAddress.getByName(_group));
+        DatagramChannel ch = (group == null ? DatagramChannel.open() : 
+            DatagramChannel.open(group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET));
+        try {
+            ch.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            ch.setOption(StandardSocketOptions.SO_RCVBUF, _rcvbuf);
+            ch.bind(_bind.isEmpty() ? new InetSocketAddress(_port) : new InetSocketAddress(_bind, _port));
+            if (group != null) {
+                NetworkInterface ni = (_ifname.isEmpty() ? _defaultInterface() : NetworkInterface.getByName(_ifname));
+                if (ni == null)
+                    throw new IOException("No network interface for multicast: "+_ifname);
+                ch.join(group, ni);
+            }
+            return ch;
+        }
+        catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+    
+    
+    private static NetworkInterface _defaultInterface() throws IOException {
+        for (NetworkInterface ni : Collections.list(NetworkInterface.getNetworkInterfaces()))
+            if (ni.isUp() && ni.supportsMulticast() && !ni.isLoopback())
+                return ni;
+        return NetworkInterface.getByName("lo");
+    }
+    
+    
+    private void _close() {
+        if (_sock != null) {
+            try { _sock.close(); }
+            catch (IOException e) {}
+            _sock = null;
+        }
+    }
+    
+    
+    
+    /** Receive loop */
+    public void run() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        byte[] line = new byte[SentenceAssembler.MAX_LINE];
+        long lastSample = System.currentTimeMillis(), lastDg = 0, lastBytes = 0;
+        DatagramChannel sock = _sock;
+        
+        while (!_stopped) {
+            try {
+                buf.clear();
+                if (sock.receive(buf) == null)
+                    continue;
+                buf.flip();
+                int n = buf.remaining();
+                _datagrams++;
+                _bytes += n;
+                if (n == MAX_DATAGRAM)
+                    _truncated++;
+                    
+                /* Split into lines. A line may end at the end of the datagram */
+                int len = 0;
+                boolean overflow = false;
+                while (buf.hasRemaining()) {
+                    byte b = buf.get();
+                    if (b == '\n' || b == '\r') {
+                        _line(line, len, overflow);
+                        len = 0;
+                        overflow = false;
+                    }
+                    else if (len < line.length)
+                        line[len++] = b;
+                    else
+                        overflow = true;
+                }
+                _line(line, len, overflow);
+                
+                long now = System.currentTimeMillis();
+                if (now - lastSample >= RATE_INTERVAL) {
+                    _dgRate = (_datagrams - lastDg) * 1000.0 / (now - lastSample);
+                    _byteRate = (_bytes - lastBytes) * 1000.0 / (now - lastSample);
+                    lastDg = _datagrams;
+                    lastBytes = _bytes;
+                    lastSample = now;
+                }
+            }
+            catch (ClosedChannelException e) {
+                break;
+            }
+            catch (IOException e) {
+                log.warn(null, chId()+"UDP receive failed: "+e);
+            }
+        }
+    }
+    
+    
+    
+    private void _line(byte[] line, int len, boolean overflow) {
+        if (len == 0 || overflow || skipLine(line, len))
+            return;
+        receiveLine(new String(line, 0, len, StandardCharsets.US_ASCII));
+    }
+    
+    
+
+    /** Stop the service */
+    @Override
+    public void deActivate() {
+        _conf.log().info("AisChannel", chId()+"Dectivating AIS UDP channel: "+getIdent());
+        _stopped = true;
+        _close();
+        try {
+            if (_reader != null) {
+                _reader.join();
+                _reader = null;
+            }
+        } 
+        catch (InterruptedException e) {
+            _conf.log().warn("AisChannel", chId()+"Interrupted while stopping AIS UDP channel: "+getIdent());
+            Thread.currentThread().interrupt(); 
+        }
+        stopIngest();
+        _state = State.OFF;
+    }
+    
+    
+    
+    @Override
+    public String toString() { return "AIS UDP Channel"; }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import no.polaric.core.*;
+import no.polaric.aprsd.*;
+import no.polaric.aprsd.point.*;
+
+
+/**
+ * DB updates collected while processing a batch of AIS packets.
+ * Each vessel is updated at most once per batch, with the position it had
+ * before the first update in the batch.
+ *
+ * If the channel coalesces position reports, the latest position of each vessel
+ * is held here until the coalescing window expires.
+ */
+
+public class UpdateBatch
+{
+    /* Position held back by coalescing */
+    private static class HeldPos {
+        long time;
+        double lat, lon;
+        int speed, course, cog;
+        String path;
+    }
+
+    private final AisChannel _chan;
+    private final AprsServerConfig _conf;
+    private final LinkedHashMap<AisVessel, LatLng> _updates = new LinkedHashMap<AisVessel, LatLng>();
+    private final HashMap<AisVessel, HeldPos> _held = new HashMap<AisVessel, HeldPos>();
+    private long _lastRelease = System.currentTimeMillis();
+    private volatile long _coalesced = 0;
+    
+    /* Processing start times (System.nanoTime) of messages with DB updates */
+    private long _entry = 0;
+    private long[] _entries = new long[64];
+    private int _nentries = 0;
+
+
+    public UpdateBatch(AisChannel chan) {
+        _chan = chan;
+        _conf = chan._conf;
+    }
+
+
+    /**
+     * Set the time (System.nanoTime) processing of the current message started.
+     * Used to measure latency until its DB update is done.
+     */
+    public void begin(long nanos)
+       { _entry = nanos; }
+
+
+
+    /**
+     * Register that a vessel has moved. prevpos is the position before the move.
+     */
+    public void add(AisVessel st, LatLng prevpos) {
+        if (!_updates.containsKey(st))
+            _updates.put(st, prevpos);
+        if (_nentries == _entries.length)
+            _entries = Arrays.copyOf(_entries, _nentries * 2);
+        _entries[_nentries++] = _entry;
+    }
+
+
+    public int size()
+       { return _updates.size(); }
+
+
+    /** Number of position reports replaced by a later report within the window. */
+    public long coalesced()
+       { return _coalesced; }
+
+
+
+    /**
+     * Hold back a position until the coalescing window expires.
+     * It replaces any position held for the same vessel.
+     */
+    public void hold(AisVessel st, long time, double lat, double lon, int speed, int course, int cog, String path) {
+        HeldPos p = _held.get(st);
+        if (p == null) {
+            p = new HeldPos();
+            _held.put(st, p);
+        }
+        else
+            _coalesced++;
+        p.time = time;
+        p.lat = lat;
+        p.lon = lon;
+        p.speed = speed;
+        p.course = course;
+        p.cog = cog;
+        p.path = path;
+    }
+
+
+
+    /**
+     * Store the position held for a vessel, if any.
+     */
+    public void release(AisVessel st) {
+        HeldPos p = _held.remove(st);
+        if (p != null)
+            _chan.storePos(st, p.time, p.lat, p.lon, p.speed, p.course, p.cog, p.path, this);
+    }
+
+
+
+    /**
+     * Store all held positions.
+     */
+    public void releaseAll() {
+        for (Map.Entry<AisVessel, HeldPos> e : _held.entrySet()) {
+            HeldPos p = e.getValue();
+            _chan.storePos(e.getKey(), p.time, p.lat, p.lon, p.speed, p.course, p.cog, p.path, this);
+        }
+        _held.clear();
+        _lastRelease = System.currentTimeMillis();
+    }
+
+
+
+    /**
+     * Apply the collected updates to the DB. Held positions are stored first
+     * if the coalescing window has expired.
+     */
+    public void flush() {
+        if (!_held.isEmpty() && System.currentTimeMillis() - _lastRelease >= _chan._coalesceTime) {
+            begin(System.nanoTime());
+            releaseAll();
+        }
+        IngestMetrics metrics = _chan._metrics;
+        for (Map.Entry<AisVessel, LatLng> e : _updates.entrySet()) {
+            /* Expired while the batch was processed. It is no longer in the DB */
+            if (e.getKey()._removed)
+                continue;
+            try {
+                long t = System.nanoTime();
+                _conf.getDB().updateItem(e.getKey(), e.getValue());
+                metrics.dbTime.record((System.nanoTime() - t) / 1000);
+            }
+            catch (Exception ex) {
+                AisPlugin.log.warn(null, "Cannot update DB item "+e.getKey().getIdent()+": "+ex);
+            }
+        }
+        _updates.clear();
+        
+        long now = System.nanoTime();
+        for (int i = 0; i < _nentries; i++)
+            metrics.latency.record((now - _entries[i]) / 1000);
+        _nentries = 0;
+    }
+}
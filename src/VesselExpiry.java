@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import no.polaric.aprsd.*;
+
+
+/**
+ * Removes vessels that have not been heard for a while from the point DB, the 
+ * MMSI index and the spatial grid. Run periodically by the plugin. 
+ * 
+ * The time to live depends on the class of the vessel: ais.expire.classA (seconds, 
+ * default 3600), ais.expire.classB (default 1800) and ais.expire.longrange 
+ * (default 1800) for vessels only heard through long range reports (message 27). 
+ * Other stations use the class B value.
+ * 
+ * With the columnar store, vessels are removed from the store instead, and their 
+ * views from the DB. 
+ * 
+ * Ship types learned by the ingest filters of active channels are removed when 
+ * not heard within the class B or class A time to live, whichever is longer. 
+ * 
+ * The run works on a copy of the index. Expired vessels are marked as removed and 
+ * taken out of the index under the index lock. They are removed from the DB after 
+ * the lock is released, so the ingest workers are not held up by the DB. Updates 
+ * of removed vessels are not applied to the DB (see UpdateBatch.flush), and 
+ * AisChannel.getStn does not take a removed vessel back from the DB. 
+ */
+
+public class VesselExpiry implements Runnable
+{
+    /* Serialises removals from the DB, see removeFromDB */
+    private static final Object _dbRemoval = new Object();
+    
+    private final AprsServerConfig _conf;
+    private final long _ttlA, _ttlB, _ttlLong;
+    private final AtomicLong _expired = new AtomicLong();
+    
+    
+    public VesselExpiry(AprsServerConfig conf) {
+        _conf = conf;
+        _ttlA = conf.getIntProperty("ais.expire.classA", 3600) * 1000L;
+        _ttlB = conf.getIntProperty("ais.expire.classB", 1800) * 1000L;
+        _ttlLong = conf.getIntProperty("ais.expire.longrange", 1800) * 1000L;
+    }
+    
+    
+    /** Number of vessels removed. */
+    public long expired()
+       { return _expired.get(); }
+       
+       
+       
+    private long _ttl(AisVessel v) {
+        switch (v._class) {
+            case AisVessel.CLASS_A: return _ttlA;
+            case AisVessel.CLASS_LONGRANGE: return _ttlLong;
+            default: return _ttlB;
+        }
+    }
+    
+    
+    
+    public void run() {
+        try {
+            long now = System.currentTimeMillis();
+            for (AisChannel ch : AisChannel._active) {
+                var filter = ch._filter;
+                if (filter != null)
+                    filter.expire(now, Math.max(_ttlA, _ttlB));
+            }
+            int n = 0;
+            var store = AisPlugin.store;
+            if (store != null) {
+                List<AisVessel> removed = store.expire(now, _ttlA, _ttlB, _ttlLong);
+                for (AisVessel v : removed)
+                    removeFromDB(_conf, v);
+                n = removed.size();
+                if (n > 0) {
+                    _expired.addAndGet(n);
+                    AisPlugin.log.info(null, "Expired "+n+" vessels, "+store.size()+" left");
+                }
+                return;
+            }
+            List<AisVessel> removed = new ArrayList<AisVessel>();
+            for (AisVessel v : AisPlugin.index.values()) {
+                if (now - v._lastHeard < _ttl(v))
+                    continue;
+                synchronized (AisPlugin.index) {
+                    /* It may have been heard or replaced since the copy was made */
+                    if (now - v._lastHeard < _ttl(v) || AisPlugin.index.get(v.getMmsi()) != v)
+                        continue;
+                    v._removed = true;
+                    AisPlugin.index.remove(v.getMmsi());
+                    release(v);
+                }
+                removed.add(v);
+            }
+            /* The trail goes with the point */
+            for (AisVessel v : removed)
+                removeFromDB(_conf, v);
+            n = removed.size();
+            if (n > 0) {
+                _expired.addAndGet(n);
+                AisPlugin.log.info(null, "Expired "+n+" vessels, "+AisPlugin.index.size()+" left");
+            }
+        }
+        catch (Exception e) {
+            AisPlugin.log.warn(null, "Vessel expiry: "+e);
+        }
+    }
+    
+    
+    
+    /**
+     * Remove a vessel marked as removed from the DB, if not done already. Returns 
+     * when it is gone, so a new vessel with the same ident can be added after it.
+     */
+    static void removeFromDB(AprsServerConfig conf, AisVessel v) {
+        synchronized (_dbRemoval) {
+            if (v._dbRemoved)
+                return;
+            v._dbRemoved = true;
+            conf.getDB().removeItem(v.getIdent());
+        }
+    }
+    
+    
+    
+    /**
+     * A vessel is no longer in use: Remove it from the grid and the live count 
+     * of the channel that added it. To be called with the index locked.
+     */
+    static void release(AisVessel v) {
+        AisPlugin.grid.remove(v);
+        AisChannel ch = v._creator;
+        if (ch != null) {
+            ch._live.decrement();
+            v._creator = null;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+
+/**
+ * Spatial index of AIS vessels: A fixed grid of lat/lon cells, each with a list of 
+ * the vessels in it. It is updated when a position is stored, and the vessel only 
+ * moves to another list when it crosses a cell border. Queries visit the cells that 
+ * overlap the area and check the actual positions.
+ * 
+ * The vessels are AisVessel objects. A Locator gives the position of a vessel and 
+ * keeps track of its cell. VesselGrid.Slots is the same for the int slots of the 
+ * VesselStore.
+ */
+
+public class VesselGrid<T>
+{
+    /** Position and grid cell of the items in a grid. */
+    public interface Locator<T> {
+        /** Cell of x, -1 if not in the grid. */
+        int cell(T x);
+        void setCell(T x, int cell);
+        boolean hasPos(T x);
+        double lat(T x);
+        double lon(T x);
+    }
+    
+    
+    /** Locator for AisVessel objects. */
+    public static final Locator<AisVessel> VESSELS = new Locator<AisVessel>() {
+        public int cell(AisVessel v)               { return v._gridCell; }
+        public void setCell(AisVessel v, int cell) { v._gridCell = cell; }
+        public boolean hasPos(AisVessel v)         { return v.getPosition() != null; }
+        public double lat(AisVessel v)             { return v.getPosition().getLat(); }
+        public double lon(AisVessel v)             { return v.getPosition().getLng(); }
+    };
+    
+    
+    private final double _cell;
+    private final int _cols, _rows;
+    private final Locator<T> _loc;
+    private final HashMap<Integer, ArrayList<T>> _cells = new HashMap<Integer, ArrayList<T>>();
+    private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+    private int _size = 0;
+    
+    
+    /**
+     * Constructor. 
+     * @param cell Size of cells in degrees. 
+     * @param loc Locator of the items.
+     */
+    public VesselGrid(double cell, Locator<T> loc) {
+        _cell = cell;
+        _loc = loc;
+        _cols = (int) Math.ceil(360 / cell);
+        _rows = (int) Math.ceil(180 / cell);
+    }
+    
+    
+    private int _col(double lon) {
+        int c = (int) Math.floor((lon + 180) / _cell);
+        return (c < 0 ? 0 : c >= _cols ? _cols - 1 : c);
+    }
+    
+    private int _row(double lat) {
+        int r = (int) Math.floor((lat + 90) / _cell);
+        return (r < 0 ? 0 : r >= _rows ? _rows - 1 : r);
+    }
+    
+    
+    
+    /**
+     * Update the position of a vessel. To be called when the vessel's position is updated.
+     */
+    public void update(T v, double lat, double lon) {
+        int key = _row(lat) * _cols + _col(lon);
+        if (key == _loc.cell(v))
+            return;
+        _lock.writeLock().lock();
+        try {
+            if (_loc.cell(v) >= 0)
+                _remove(v);
+            else
+                _size++;
+            _cells.computeIfAbsent(key, k -> new ArrayList<T>(4)).add(v);
+            _loc.setCell(v, key);
+        }
+        finally { _lock.writeLock().unlock(); }
+    }
+    
+    
+    
+    /** Remove a vessel from the index. */
+    public void remove(T v) {
+        if (_loc.cell(v) < 0)
+            return;
+        _lock.writeLock().lock();
+        try {
+            if (_loc.cell(v) >= 0) {
+                _remove(v);
+                _loc.setCell(v, -1);
+                _size--;
+            }
+        }
+        finally { _lock.writeLock().unlock(); }
+    }
+    
+    
+    private void _remove(T v) {
+        int cell = _loc.cell(v);
+        ArrayList<T> c = _cells.get(cell);
+        if (c == null)
+            return;
+        int i = c.indexOf(v);
+        if (i >= 0) {
+            /* Order does not matter, move the last one into the hole */
+            int last = c.size() - 1;
+            c.set(i, c.get(last));
+            c.remove(last);
+        }
+        if (c.isEmpty())
+            _cells.remove(cell);
+    }
+    
+    
+    
+    public int size() {
+        _lock.readLock().lock();
+        try { return _size; }
+        finally { _lock.readLock().unlock(); }
+    }
+    
+    
+    public void clear() {
+        _lock.writeLock().lock();
+        try {
+            for (ArrayList<T> c : _cells.values())
+                for (T v : c)
+                    _loc.setCell(v, -1);
+            _cells.clear();
+            _size = 0;
+        }
+        finally { _lock.writeLock().unlock(); }
+    }
+    
+    
+    
+    /**
+     * Find vessels within a bounding box. If minLon > maxLon, the box crosses 
+     * the 180 degree meridian. 
+     */
+    public List<T> bbox(double minLat, double minLon, double maxLat, double maxLon) {
+        ArrayList<T> res = new ArrayList<T>();
+        _lock.readLock().lock();
+        try {
+            if (minLon > maxLon) {
+                _bbox(minLat, minLon, maxLat, 180, res);
+                _bbox(minLat, -180, maxLat, maxLon, res);
+            }
+            else
+                _bbox(minLat, minLon, maxLat, maxLon, res);
+        }
+        finally { _lock.readLock().unlock(); }
+        return res;
+    }
+    
+    
+    private void _bbox(double minLat, double minLon, double maxLat, double maxLon, List<T> res) {
+        int r0 = _row(minLat), r1 = _row(maxLat);
+        int c0 = _col(minLon), c1 = _col(maxLon);
+        
+        if ((long) (r1 - r0 + 1) * (c1 - c0 + 1) > _cells.size()) {
+            /* Large area: Visit the non-empty cells instead */
+            for (Map.Entry<Integer, ArrayList<T>> e : _cells.entrySet()) {
+                int r = e.getKey() / _cols, c = e.getKey() % _cols;
+                if (r >= r0 && r <= r1 && c >= c0 && c <= c1)
+                    _match(e.getValue(), minLat, minLon, maxLat, maxLon, res);
+            }
+            return;
+        }
+        for (int r = r0; r <= r1; r++)
+            for (int c = c0; c <= c1; c++) {
+                ArrayList<T> cell = _cells.get(r * _cols + c);
+                if (cell != null)
+                    _match(cell, minLat, minLon, maxLat, maxLon, res);
+            }
+    }
+    
+    
+    private void _match(List<T> cell, double minLat, double minLon, 
+                        double maxLat, double maxLon, List<T> res) {
+        for (T v : cell) {
+            if (!_loc.hasPos(v))
+                continue;
+            double lat = _loc.lat(v), lon = _loc.lon(v);
+            if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon)
+                res.add(v);
+        }
+    }
+    
+    
+    
+    /**
+     * Find vessels within a radius (meters) from a point. 
+     */
+    public List<T> radius(double lat, double lon, double radius) {
+        double[] b = _radiusBox(lat, lon, radius);
+        List<T> res = bbox(b[0], b[1], b[2], b[3]);
+        res.removeIf(v -> distance(lat, lon, _loc.lat(v), _loc.lon(v)) > radius);
+        return res;
+    }
+    
+    
+    /* Bounding box (minLat, minLon, maxLat, maxLon) of a circle */
+    private static double[] _radiusBox(double lat, double lon, double radius) {
+        double ar = radius / EARTH_RADIUS;
+        double dlat = Math.toDegrees(ar);
+        double minLon = -180, maxLon = 180;
+        if (Math.abs(lat) + dlat < 90) {
+            /* Longitude extent of the circle. Full range if it covers a pole */
+            double s = Math.sin(ar) / Math.cos(Math.toRadians(lat));
+            if (s < 1) {
+                double dlon = Math.toDegrees(Math.asin(s));
+                minLon = lon - dlon;
+                maxLon = lon + dlon;
+                if (minLon < -180) minLon += 360;
+                if (maxLon > 180) maxLon -= 360;
+            }
+        }
+        return new double[] {Math.max(-90, lat - dlat), minLon, Math.min(90, lat + dlat), maxLon};
+    }
+    
+    
+    
+    /**
+     * Grid of int handles: The slots of the VesselStore. Cells are arrays of slots, 
+     * so nothing is boxed. Not thread safe: It is used under the lock of the store. 
+     */
+    public static class Slots
+    {
+        /** Position and grid cell of the slots in a grid. */
+        public interface Locator {
+            /** Cell of s, -1 if not in the grid. */
+            int cell(int s);
+            void setCell(int s, int cell);
+            boolean hasPos(int s);
+            double lat(int s);
+            double lon(int s);
+        }
+        
+        /* Slots in a cell, also used for query results */
+        private static class Cell {
+            int[] slots = new int[4];
+            int n = 0;
+            
+            void add(int s) {
+                if (n == slots.length)
+                    slots = Arrays.copyOf(slots, n * 2);
+                slots[n++] = s;
+            }
+        }
+        
+        private final double _cell;
+        private final int _cols, _rows;
+        private final Locator _loc;
+        private final HashMap<Integer, Cell> _cells = new HashMap<Integer, Cell>();
+        private int _size = 0;
+        
+        
+        public Slots(double cell, Locator loc) {
+            _cell = cell;
+            _loc = loc;
+            _cols = (int) Math.ceil(360 / cell);
+            _rows = (int) Math.ceil(180 / cell);
+        }
+        
+        
+        private int _col(double lon) {
+            int c = (int) Math.floor((lon + 180) / _cell);
+            return (c < 0 ? 0 : c >= _cols ? _cols - 1 : c);
+        }
+        
+        private int _row(double lat) {
+            int r = (int) Math.floor((lat + 90) / _cell);
+            return (r < 0 ? 0 : r >= _rows ? _rows - 1 : r);
+        }
+        
+        
+        /** Update the position of a slot. */
+        public void update(int s, double lat, double lon) {
+            int key = _row(lat) * _cols + _col(lon);
+            if (key == _loc.cell(s))
+                return;
+            if (_loc.cell(s) >= 0)
+                _remove(s);
+            else
+                _size++;
+            _cells.computeIfAbsent(key, k -> new Cell()).add(s);
+            _loc.setCell(s, key);
+        }
+        
+        
+        /** Remove a slot from the index. */
+        public void remove(int s) {
+            if (_loc.cell(s) < 0)
+                return;
+            _remove(s);
+            _loc.setCell(s, -1);
+            _size--;
+        }
+        
+        
+        private void _remove(int s) {
+            int key = _loc.cell(s);
+            Cell c = _cells.get(key);
+            if (c == null)
+                return;
+            for (int i = 0; i < c.n; i++)
+                if (c.slots[i] == s) {
+                    /* Order does not matter, move the last one into the hole */
+                    c.slots[i] = c.slots[--c.n];
+                    break;
+                }
+            if (c.n == 0)
+                _cells.remove(key);
+        }
+        
+        
+        public int size()
+           { return _size; }
+        
+        
+        public void clear() {
+            for (Cell c : _cells.values())
+                for (int i = 0; i < c.n; i++)
+                    _loc.setCell(c.slots[i], -1);
+            _cells.clear();
+            _size = 0;
+        }
+        
+        
+        /**
+         * Find slots within a bounding box. If minLon > maxLon, the box crosses 
+         * the 180 degree meridian. 
+         */
+        public int[] bbox(double minLat, double minLon, double maxLat, double maxLon) {
+            Cell res = new Cell();
+            if (minLon > maxLon) {
+                _bbox(minLat, minLon, maxLat, 180, res);
+                _bbox(minLat, -180, maxLat, maxLon, res);
+            }
+            else
+                _bbox(minLat, minLon, maxLat, maxLon, res);
+            return Arrays.copyOf(res.slots, res.n);
+        }
+        
+        
+        private void _bbox(double minLat, double minLon, double maxLat, double maxLon, Cell res) {
+            int r0 = _row(minLat), r1 = _row(maxLat);
+            int c0 = _col(minLon), c1 = _col(maxLon);
+            
+            if ((long) (r1 - r0 + 1) * (c1 - c0 + 1) > _cells.size()) {
+                /* Large area: Visit the non-empty cells instead */
+                for (Map.Entry<Integer, Cell> e : _cells.entrySet()) {
+                    int r = e.getKey() / _cols, c = e.getKey() % _cols;
+                    if (r >= r0 && r <= r1 && c >= c0 && c <= c1)
+                        _match(e.getValue(), minLat, minLon, maxLat, maxLon, res);
+                }
+                return;
+            }
+            for (int r = r0; r <= r1; r++)
+                for (int c = c0; c <= c1; c++) {
+                    Cell cell = _cells.get(r * _cols + c);
+                    if (cell != null)
+                        _match(cell, minLat, minLon, maxLat, maxLon, res);
+                }
+        }
+        
+        
+        private void _match(Cell cell, double minLat, double minLon, double maxLat, double maxLon, Cell res) {
+            for (int i = 0; i < cell.n; i++) {
+                int s = cell.slots[i];
+                if (!_loc.hasPos(s))
+                    continue;
+                double lat = _loc.lat(s), lon = _loc.lon(s);
+                if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon)
+                    res.add(s);
+            }
+        }
+        
+        
+        /** Find slots within a radius (meters) from a point. */
+        public int[] radius(double lat, double lon, double radius) {
+            double[] b = _radiusBox(lat, lon, radius);
+            int[] res = bbox(b[0], b[1], b[2], b[3]);
+            int n = 0;
+            for (int s : res)
+                if (distance(lat, lon, _loc.lat(s), _loc.lon(s)) <= radius)
+                    res[n++] = s;
+            return Arrays.copyOf(res, n);
+        }
+    }
+    
+    
+    
+    public static final double EARTH_RADIUS = 6371000;
+    
+    /** Great circle distance in meters (haversine). */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dlat = Math.toRadians(lat2 - lat1), dlon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dlat/2) * Math.sin(dlat/2) + 
+            Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dlon/2) * Math.sin(dlon/2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
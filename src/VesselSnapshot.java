@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import no.polaric.aprsd.*;
+import no.polaric.aprsd.point.*;
+
+
+/**
+ * Binary snapshot of the vessel table, so that static data and last positions 
+ * survive a restart. The file is a header followed by fixed size records, and is 
+ * written and read through a memory mapping. A snapshot is written to a temporary 
+ * file and moved into place, so a crash while writing leaves the previous one intact.
+ */
+
+public class VesselSnapshot
+{
+    private static final int MAGIC   = 0x41495353;   // "AISS"
+    private static final int VERSION = 1;
+    private static final int HEADER  = 24;
+    
+    /* Record layout */
+    private static final int NAME_LEN = 20, CALLSIGN_LEN = 7;
+    private static final int REC = 80;
+    private static final int R_MMSI = 0, R_TIME = 8, R_LAT = 16, R_LON = 24, R_TYPE = 32, 
+        R_NAVSTATUS = 34, R_SPEED = 36, R_COURSE = 38, R_NAME = 40, R_CALLSIGN = 60, R_CLASS = 67;
+        
+    private final Path _file;
+    
+    
+    public VesselSnapshot(String file)
+       { _file = Paths.get(file); }
+    
+    
+    
+    /* Writes at most max records after the header, returns the number written */
+    private interface Records {
+        int write(ByteBuffer buf, int max);
+    }
+    
+    
+    
+    /** 
+     * Write the vessels to the snapshot file. 
+     * @return number of vessels written.
+     */
+    public int save(Collection<AisVessel> vessels) throws IOException {
+        return _save(vessels.size(), (buf, max) -> {
+            int i = 0;
+            for (AisVessel v : vessels) {
+                if (i == max)
+                    break;
+                _write(buf, HEADER + i * REC, v);
+                i++;
+            }
+            return i;
+        });
+    }
+    
+    
+    
+    /** 
+     * Write the vessels of a columnar store to the snapshot file. The store is 
+     * locked while writing. 
+     * @return number of vessels written.
+     */
+    public int save(VesselStore store) throws IOException {
+        synchronized (store) {
+            return _save(store.size(), (buf, max) -> {
+                int i = 0;
+                for (int s = 0; s < store.top() && i < max; s++) {
+                    if (store.mmsi(s) < 0)
+                        continue;
+                    boolean pos = store.hasPos(s);
+                    _write(buf, HEADER + i * REC, store.mmsi(s), store.time(s), 
+                        pos ? store.lat(s) : Double.NaN, pos ? store.lon(s) : Double.NaN,
+                        store.type(s), store.navStatus(s), store.speed(s), store.course(s), 
+                        store.name(s), store.callsign(s), store.vclass(s));
+                    i++;
+                }
+                return i;
+            });
+        }
+    }
+    
+    
+    
+    private int _save(int n, Records recs) throws IOException {
+        Path tmp = _file.resolveSibling(_file.getFileName()+".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) 
+        {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) n * REC);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int i = recs.write(buf, n);
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, VERSION);
+            buf.putInt(8, i);
+            buf.putInt(12, REC);
+            buf.putLong(16, System.currentTimeMillis());
+            buf.force();
+            n = i;
+        }
+        Files.move(tmp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return n;
+    }
+    
+    
+    
+    private static void _write(ByteBuffer buf, int off, AisVessel v) {
+        AisVessel.Report r = v._report;
+        _write(buf, off, v.getMmsi(), r == null ? 0 : r.time, 
+            r == null ? Double.NaN : r.lat, r == null ? Double.NaN : r.lon, 
+            v.getType(), v.getNavStatus(), r == null ? v.getSpeed() : r.speed, r == null ? v.getCourse() : r.course, 
+            v.getName(), v.getCallsign(), v._class);
+    }
+    
+    
+    
+    private static void _write(ByteBuffer buf, int off, long mmsi, long time, double lat, double lon, 
+           int type, int navstatus, int speed, int course, String name, String callsign, byte cls) 
+    {
+        buf.putLong(off + R_MMSI, mmsi);
+        buf.putLong(off + R_TIME, time);
+        buf.putDouble(off + R_LAT, lat);
+        buf.putDouble(off + R_LON, lon);
+        buf.putShort(off + R_TYPE, (short) type);
+        buf.putShort(off + R_NAVSTATUS, (short) navstatus);
+        buf.putShort(off + R_SPEED, (short) speed);
+        buf.putShort(off + R_COURSE, (short) course);
+        _putText(buf, off + R_NAME, NAME_LEN, name);
+        _putText(buf, off + R_CALLSIGN, CALLSIGN_LEN, callsign);
+        buf.put(off + R_CLASS, cls);
+    }
+    
+    
+    
+    private static void _putText(ByteBuffer buf, int off, int len, String s) {
+        int n = (s == null ? 0 : Math.min(len, s.length()));
+        for (int i = 0; i < len; i++)
+            buf.put(off + i, i < n ? (byte) (s.charAt(i) & 0x7f) : 0);
+    }
+    
+    
+    
+    private static String _getText(ByteBuffer buf, int off, int len, byte[] tmp) {
+        int n = 0;
+        while (n < len && buf.get(off + n) != 0) {
+            tmp[n] = buf.get(off + n);
+            n++;
+        }
+        return (n == 0 ? null : new String(tmp, 0, n, StandardCharsets.US_ASCII));
+    }
+    
+    
+    
+    /**
+     * Load vessels from the snapshot file and add them to the point DB and the 
+     * MMSI index. Vessels that are already in the DB or are expired are skipped.
+     * @return number of vessels restored, 0 if there is no snapshot.
+     */
+    public int load(AprsServerConfig conf, MmsiIndex index) throws IOException {
+        if (!Files.isReadable(_file))
+            return 0;
+        int restored = 0;
+        try (FileChannel ch = FileChannel.open(_file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = _map(ch);
+            int n = buf.getInt(8);
+            long saved = buf.getLong(16);
+            
+            byte[] tmp = new byte[NAME_LEN];
+            StationDB db = conf.getDB();
+            for (int i = 0; i < n; i++) {
+                int off = HEADER + i * REC;
+                long mmsi = buf.getLong(off + R_MMSI);
+                if (index.get(mmsi) != null || db.getItem("MMSI:"+mmsi, null) != null)
+                    continue;
+                    
+                AisVessel v = new AisVessel(null, mmsi);
+                v.setName(_getText(buf, off + R_NAME, NAME_LEN, tmp));
+                v.setCallsign(_getText(buf, off + R_CALLSIGN, CALLSIGN_LEN, tmp));
+                v.setNavStatus(buf.getShort(off + R_NAVSTATUS));
+                v._class = buf.get(off + R_CLASS);
+                v.setTag("AIS");
+                int type = buf.getShort(off + R_TYPE);
+                if (type != 0) {
+                    v.setType(type);
+                    AisChannel.setTypeTag(v, type);
+                }
+                v.setLabelHidden(!v.hasName() && !v.hasCallsign());
+                v.autoTag();
+                
+                double lat = buf.getDouble(off + R_LAT), lon = buf.getDouble(off + R_LON);
+                long time = buf.getLong(off + R_TIME);
+                v._lastHeard = (time > 0 ? time : saved);
+                if (!Double.isNaN(lat) && time > 0) {
+                    v.updatePosition(new Date(time), new LatLng(lat, lon));
+                    AisPlugin.grid.update(v, lat, lon);
+                    v.setMotion(buf.getShort(off + R_SPEED), buf.getShort(off + R_COURSE), -1);
+                }
+                if (v.expired()) {
+                    AisPlugin.grid.remove(v);
+                    continue;
+                }
+                db.addItem(v);
+                index.put(mmsi, v);
+                restored++;
+            }
+        }
+        return restored;
+    }
+    
+    
+    
+    /**
+     * Load vessels from the snapshot file into a columnar store. Vessels that are 
+     * already in the store are skipped. Expired vessels are removed by the next 
+     * expiry run. 
+     * @return number of vessels restored, 0 if there is no snapshot.
+     */
+    public int load(VesselStore store) throws IOException {
+        if (!Files.isReadable(_file))
+            return 0;
+        int restored = 0;
+        try (FileChannel ch = FileChannel.open(_file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = _map(ch);
+            int n = buf.getInt(8);
+            long saved = buf.getLong(16);
+            byte[] tmp = new byte[NAME_LEN];
+            for (int i = 0; i < n; i++) {
+                int off = HEADER + i * REC;
+                long time = buf.getLong(off + R_TIME);
+                if (store.restore(buf.getLong(off + R_MMSI), time, 
+                        buf.getDouble(off + R_LAT), buf.getDouble(off + R_LON), 
+                        buf.getShort(off + R_SPEED), buf.getShort(off + R_COURSE),
+                        buf.getShort(off + R_TYPE), buf.getShort(off + R_NAVSTATUS), 
+                        _getText(buf, off + R_NAME, NAME_LEN, tmp), _getText(buf, off + R_CALLSIGN, CALLSIGN_LEN, tmp),
+                        buf.get(off + R_CLASS), time > 0 ? time : saved))
+                    restored++;
+            }
+        }
+        return restored;
+    }
+    
+    
+    
+    /* Map the snapshot file and check the header */
+    private MappedByteBuffer _map(FileChannel ch) throws IOException {
+        if (ch.size() < HEADER)
+            throw new IOException("Snapshot file too short: "+_file);
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION || buf.getInt(12) != REC)
+            throw new IOException("Unknown snapshot format: "+_file);
+        if (HEADER + (long) buf.getInt(8) * REC > ch.size())
+            throw new IOException("Snapshot file truncated: "+_file);
+        return buf;
+    }
+}
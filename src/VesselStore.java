@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.util.*;
+import no.polaric.aprsd.*;
+import no.polaric.aprsd.point.*;
+
+
+/**
+ * Columnar store of AIS vessels, used when ais.store is "columnar". Each vessel has 
+ * a slot, and each attribute is a primitive array indexed by slot. Positions are 
+ * stored as integers in units of 1e-7 degrees. The plugin's REST API, the delta 
+ * stream, the position projector and the overload controller read the columns. 
+ * Area queries use a VesselGrid.Slots. 
+ * 
+ * Each vessel in the store has a StoreVessel: A view of its slot, which is in the 
+ * point DB, so the server's map, search and trails see it. The view has no copies 
+ * of the attributes in the columns. It is added to the DB when the vessel is added 
+ * to the store, see update. Vessels removed by expire are removed from the DB by 
+ * the caller, after the lock is released. 
+ */
+
+public class VesselStore
+{
+    private static final int NO_POS = Integer.MIN_VALUE;
+    private static final double SCALE = 1e7;
+    
+    private final AprsServerConfig _conf;
+    
+    /* Held while a vessel is added, see update */
+    private final Object _adding = new Object();
+    
+    /* MMSI and slot allocation. The columns are indexed by slot */
+    private final MmsiSlots _index;
+    private long[]   _time, _heard;
+    private int[]    _lat, _lon;
+    private short[]  _speed, _course, _cog, _type;
+    private byte[]   _navstatus, _class;
+    private String[] _name, _callsign;
+    private AisChannel[] _creator;
+    private StoreVessel[] _view;
+    
+    /* Grid cell of a slot */
+    private int[] _cell;
+    private final VesselGrid.Slots _grid = new VesselGrid.Slots(0.2, new VesselGrid.Slots.Locator() {
+        public int cell(int s)               { return _cell[s]; }
+        public void setCell(int s, int cell) { _cell[s] = cell; }
+        public boolean hasPos(int s)         { return _lat[s] != NO_POS; }
+        public double lat(int s)             { return _lat[s] / SCALE; }
+        public double lon(int s)             { return _lon[s] / SCALE; }
+    });
+    
+    
+    public VesselStore(AprsServerConfig conf, int capacity) {
+        _conf = conf;
+        _index = new MmsiSlots(capacity);
+        int cap = _index.capacity();
+        _time = new long[cap];
+        _heard = new long[cap];
+        _lat = new int[cap];
+        _lon = new int[cap];
+        _speed = new short[cap];
+        _course = new short[cap];
+        _cog = new short[cap];
+        _type = new short[cap];
+        _navstatus = new byte[cap];
+        _class = new byte[cap];
+        _name = new String[cap];
+        _callsign = new String[cap];
+        _creator = new AisChannel[cap];
+        _view = new StoreVessel[cap];
+        _cell = new int[cap];
+    }
+    
+    
+    
+    private void _grow(int cap) {
+        _time = Arrays.copyOf(_time, cap);
+        _heard = Arrays.copyOf(_heard, cap);
+        _lat = Arrays.copyOf(_lat, cap);
+        _lon = Arrays.copyOf(_lon, cap);
+        _speed = Arrays.copyOf(_speed, cap);
+        _course = Arrays.copyOf(_course, cap);
+        _cog = Arrays.copyOf(_cog, cap);
+        _type = Arrays.copyOf(_type, cap);
+        _navstatus = Arrays.copyOf(_navstatus, cap);
+        _class = Arrays.copyOf(_class, cap);
+        _name = Arrays.copyOf(_name, cap);
+        _callsign = Arrays.copyOf(_callsign, cap);
+        _creator = Arrays.copyOf(_creator, cap);
+        _view = Arrays.copyOf(_view, cap);
+        _cell = Arrays.copyOf(_cell, cap);
+    }
+    
+    
+    
+    /** Slot of vessel with given MMSI. -1 if not found. */
+    public synchronized int find(long mmsi)
+       { return _index.get(mmsi); }
+    
+    
+    /** Ship type of vessel with given MMSI. 0 if not known or not in the store. */
+    public synchronized int shipType(long mmsi) {
+        int s = _index.get(mmsi);
+        return (s < 0 ? 0 : _type[s]);
+    }
+    
+    
+    
+    /**
+     * A message is heard from a vessel: Find its slot, or add it if not there, and 
+     * set what the message has, under one lock. The class is set, except that long 
+     * range reports do not override a known class. A new vessel is counted by the 
+     * channel and gets the channel's tag. Static data are set as in _setStatic. 
+     * The position is set in the columns. The caller stores it in the view, for the 
+     * map and the trail. 
+     * 
+     * The view of a new vessel is added to the DB before it is added to the store, 
+     * so that the DB is never called with the store locked: The views lock the store 
+     * when they are read, and the DB may read them while it holds locks of its own. 
+     * Vessels are added one at a time. 
+     * @param navstatus Navigational status, not changed if negative. 
+     * @param lat Latitude of position report, NaN if the message has no position. 
+     * @param course Heading, for display. 
+     * @param cog Course over ground, for dead reckoning. 
+     * @return the view of the vessel.
+     */
+    public StoreVessel update(long mmsi, AisChannel ch, byte cls, long now, int navstatus, 
+           String name, String callsign, int type, long time, double lat, double lon, int speed, int course, int cog) 
+    {
+        synchronized (this) {
+            int s = _index.get(mmsi);
+            if (s >= 0)
+                return _update(s, cls, now, navstatus, name, callsign, type, time, lat, lon, speed, course, cog);
+        }
+        synchronized (_adding) {
+            synchronized (this) {
+                /* It may have been added by another worker meanwhile */
+                int s = _index.get(mmsi);
+                if (s >= 0)
+                    return _update(s, cls, now, navstatus, name, callsign, type, time, lat, lon, speed, course, cog);
+            }
+            StoreVessel v = _newView(mmsi);
+            if (ch != null) {
+                String tag = ch.getTag();
+                if (tag != null && !tag.equals(""))
+                    v.setTag(tag);
+            }
+            _dbAdd(v);
+            synchronized (this) {
+                int s = _add(v);
+                _creator[s] = ch;
+                if (ch != null) {
+                    ch._vessels.increment();
+                    ch._live.increment();
+                }
+                return _update(s, cls, now, navstatus, name, callsign, type, time, lat, lon, speed, course, cog);
+            }
+        }
+    }
+    
+    
+    
+    private StoreVessel _update(int s, byte cls, long now, int navstatus, String name, String callsign, 
+           int type, long time, double lat, double lon, int speed, int course, int cog) 
+    {
+        _heard[s] = now;
+        if (cls != AisVessel.CLASS_UNKNOWN && (cls != AisVessel.CLASS_LONGRANGE || _class[s] == AisVessel.CLASS_UNKNOWN))
+            _class[s] = cls;
+        _setStatic(s, name, callsign, type);
+        if (navstatus >= 0)
+            _navstatus[s] = (byte) navstatus;
+        if (!Double.isNaN(lat))
+            _setPos(s, time, lat, lon, speed, course, cog);
+        return _view[s];
+    }
+    
+    
+    
+    /* A view of a new vessel, not yet in the store */
+    private StoreVessel _newView(long mmsi) {
+        StoreVessel v = new StoreVessel(this, mmsi);
+        v.setLabelHidden(true);
+        v.setTag("AIS");
+        return v;
+    }
+    
+    
+    
+    /* Add a vessel with its view to the store. The columns get values for 'not known' */
+    private int _add(StoreVessel v) {
+        int s = _index.add(v.getMmsi());
+        if (_index.capacity() > _time.length)
+            _grow(_index.capacity());
+        _view[s] = v;
+        v.attach(s);
+        _cell[s] = -1;
+        _time[s] = 0;
+        _lat[s] = _lon[s] = NO_POS;
+        _speed[s] = _course[s] = _cog[s] = -1;
+        _type[s] = 0;
+        _navstatus[s] = -1;
+        _class[s] = AisVessel.CLASS_UNKNOWN;
+        return s;
+    }
+    
+    
+    
+    /* 
+     * Add the view of a new vessel to the DB. A vessel with the same MMSI may have 
+     * expired and not yet be removed from the DB: It is removed first. 
+     */
+    private void _dbAdd(StoreVessel v) {
+        StationDB db = _conf.getDB();
+        var old = db.getItem(v.getIdent(), null);
+        if (old instanceof AisVessel && ((AisVessel) old)._removed)
+            VesselExpiry.removeFromDB(_conf, (AisVessel) old);
+        db.addItem(v);
+    }
+    
+    
+    
+    /* Set the position of the vessel in a slot and move it in the grid */
+    private void _setPos(int s, long time, double lat, double lon, int speed, int course, int cog) {
+        _time[s] = time;
+        _lat[s] = (int) Math.round(lat * SCALE);
+        _lon[s] = (int) Math.round(lon * SCALE);
+        _speed[s] = (short) speed;
+        _course[s] = (short) course;
+        _cog[s] = (short) cog;
+        _grid.update(s, lat, lon);
+    }
+    
+    
+    
+    /*
+     * Set static data of the vessel in a slot. Raw texts from the message are 
+     * compared with what the vessel has, and new ones are taken from the text pool. 
+     * Null, empty texts and type 0 do not change anything. The view is tagged and 
+     * its label shown as in AisChannel.updateStatic. 
+     */
+    private void _setStatic(int s, String rname, String rcallsign, int type) {
+        if (rname == null && rcallsign == null && type == 0)
+            return;
+        StoreVessel v = _view[s];
+        if (rname != null && !TextPool.same(rname, _name[s])) {
+            String name = AisPlugin.texts.get(rname);
+            if (name.length() > 0)
+                _name[s] = name;
+        }
+        if (rcallsign != null && !TextPool.same(rcallsign, _callsign[s])) {
+            String callsign = AisPlugin.texts.get(rcallsign);
+            if (callsign.length() > 0) {
+                _callsign[s] = callsign;
+                v._descr = null;
+            }
+        }
+        boolean first = v.isLabelHidden();
+        boolean newtype = (type != 0 && type != _type[s]);
+        if (newtype) {
+            _type[s] = (short) type;
+            v._descr = null;
+            AisChannel.setTypeTag(v, type);
+        }
+        if (first)
+            v.setLabelHidden(false);
+        if (first || newtype)
+            v.autoTag();
+    }
+    
+    
+    
+    /**
+     * Add a vessel restored from a snapshot, with its view, as VesselSnapshot does 
+     * for AisVessel objects. Vessels already in the store are not changed. 
+     * @return false if the vessel was already there.
+     */
+    public boolean restore(long mmsi, long time, double lat, double lon, int speed, int course, 
+           int type, int navstatus, String name, String callsign, byte cls, long heard) 
+    {
+        synchronized (_adding) {
+            synchronized (this) {
+                if (_index.get(mmsi) >= 0)
+                    return false;
+            }
+            /* The view is set up before it is attached, and then has the values itself */
+            StoreVessel v = _newView(mmsi);
+            boolean pos = (!Double.isNaN(lat) && time > 0);
+            if (pos) {
+                v.updatePosition(new Date(time), new LatLng(lat, lon));
+                v.setMotion(speed, course, -1);
+            }
+            v.setName(name);
+            v.setCallsign(callsign);
+            if (type != 0) {
+                v.setType(type);
+                AisChannel.setTypeTag(v, type);
+            }
+            v.setLabelHidden(!v.hasName() && !v.hasCallsign());
+            v.autoTag();
+            _dbAdd(v);
+            synchronized (this) {
+                int s = _add(v);
+                if (pos)
+                    _setPos(s, time, lat, lon, speed, course, -1);
+                _type[s] = (short) type;
+                _navstatus[s] = (byte) navstatus;
+                _name[s] = name;
+                _callsign[s] = callsign;
+                _class[s] = cls;
+                _heard[s] = heard;
+            }
+            return true;
+        }
+    }
+    
+    
+    
+    /* Remove the vessel in slot s. Its view is marked as removed and detached */
+    private StoreVessel _remove(int s) {
+        StoreVessel v = _view[s];
+        v._removed = true;
+        v.detach();
+        _grid.remove(s);
+        _index.remove(_index.mmsi(s));
+        if (_creator[s] != null)
+            _creator[s]._live.decrement();
+        _name[s] = _callsign[s] = null;
+        _creator[s] = null;
+        _view[s] = null;
+        return v;
+    }
+    
+    
+    
+    /**
+     * Remove vessels not heard within the time to live of their class. The caller 
+     * removes them from the DB, see VesselExpiry.removeFromDB. 
+     * @return the views of the vessels removed.
+     */
+    public synchronized List<AisVessel> expire(long now, long ttlA, long ttlB, long ttlLong) {
+        List<AisVessel> res = new ArrayList<AisVessel>();
+        for (int s = 0; s < _index.top(); s++) {
+            if (_index.mmsi(s) < 0)
+                continue;
+            byte c = _class[s];
+            long ttl = (c == AisVessel.CLASS_A ? ttlA : c == AisVessel.CLASS_LONGRANGE ? ttlLong : ttlB);
+            if (now - _heard[s] >= ttl)
+                res.add(_remove(s));
+        }
+        return res;
+    }
+    
+    
+    
+    public synchronized int size()
+       { return _index.size(); }
+       
+       
+    /** Remove all vessels. Their views are not removed from the DB. */
+    public synchronized void clear() {
+        for (int s = 0; s < _index.top(); s++)
+            if (_index.mmsi(s) >= 0)
+                _remove(s);
+        _index.clear();
+    }
+    
+    
+    
+    /* Column access for a slot, for the readers of the store and the views. To be used with the store locked */
+    long mmsi(int s)       { return _index.mmsi(s); }
+    long time(int s)       { return _time[s]; }
+    long heard(int s)      { return _heard[s]; }
+    boolean hasPos(int s)  { return _lat[s] != NO_POS; }
+    double lat(int s)      { return _lat[s] / SCALE; }
+    double lon(int s)      { return _lon[s] / SCALE; }
+    int speed(int s)       { return _speed[s]; }
+    int course(int s)      { return _course[s]; }
+    int cog(int s)         { return _cog[s]; }
+    int type(int s)        { return _type[s]; }
+    int navStatus(int s)   { return _navstatus[s]; }
+    byte vclass(int s)     { return _class[s]; }
+    String name(int s)     { return _name[s]; }
+    String callsign(int s) { return _callsign[s]; }
+    
+    void setName(int s, String name)         { _name[s] = name; }
+    void setCallsign(int s, String callsign) { _callsign[s] = callsign; }
+    void setType(int s, int type)            { _type[s] = (short) type; }
+    void setNavStatus(int s, int navstatus)  { _navstatus[s] = (byte) navstatus; }
+    
+    /** Number of slots in use or free. Slots with mmsi(s) < 0 are free. */
+    int top()              { return _index.top(); }
+    
+    
+    
+    /**
+     * Find vessels within a bounding box. If minLon > maxLon, the box crosses 
+     * the 180 degree meridian. 
+     */
+    public synchronized List<AisVessel> bbox(double minLat, double minLon, double maxLat, double maxLon) 
+       { return _vessels(_grid.bbox(minLat, minLon, maxLat, maxLon)); }
+    
+    
+    
+    /**
+     * Find vessels within a distance (meters) from a point. 
+     */
+    public synchronized List<AisVessel> radius(double lat, double lon, double meters)
+       { return _vessels(_grid.radius(lat, lon, meters)); }
+       
+       
+    private List<AisVessel> _vessels(int[] slots) {
+        ArrayList<AisVessel> res = new ArrayList<AisVessel>(slots.length);
+        for (int s : slots)
+            res.add(_view[s]);
+        return res;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.time.Instant;
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Resolving the UTC second of position reports to full times, around 
+ * minute, hour, day and year boundaries. 
+ */
+
+public class AisTimestampTest
+{
+    private static long t(String iso)
+       { return Instant.parse(iso).toEpochMilli(); }
+    
+    
+    @Test
+    public void sameMinute() {
+        assertEquals(t("2026-03-01T12:30:40.250Z"), AisTimestamp.resolve(t("2026-03-01T12:30:45.250Z"), 40));
+        assertEquals(t("2026-03-01T12:30:45.250Z"), AisTimestamp.resolve(t("2026-03-01T12:30:45.250Z"), 45));
+    }
+    
+    
+    @Test
+    public void aheadWithinLimit() {
+        /* A report up to MAX_AHEAD ms after reception is in the same minute */
+        assertEquals(t("2026-03-01T12:30:47.250Z"), AisTimestamp.resolve(t("2026-03-01T12:30:45.250Z"), 47));
+        assertEquals(t("2026-03-01T12:30:48.000Z"), AisTimestamp.resolve(t("2026-03-01T12:30:45.000Z"), 48));
+    }
+    
+    
+    @Test
+    public void aheadBeyondLimit() {
+        /* More than MAX_AHEAD ms ahead: The report is from the previous minute */
+        assertEquals(t("2026-03-01T12:29:49.000Z"), AisTimestamp.resolve(t("2026-03-01T12:30:45.000Z"), 49));
+    }
+    
+    
+    @Test
+    public void minuteRollover() {
+        assertEquals(t("2026-03-01T12:30:58.000Z"), AisTimestamp.resolve(t("2026-03-01T12:31:02.000Z"), 58));
+    }
+    
+    
+    @Test
+    public void hourRollover() {
+        assertEquals(t("2026-03-01T11:59:59.500Z"), AisTimestamp.resolve(t("2026-03-01T12:00:01.500Z"), 59));
+        assertEquals(t("2026-03-01T12:00:00.500Z"), AisTimestamp.resolve(t("2026-03-01T12:00:01.500Z"), 0));
+    }
+    
+    
+    @Test
+    public void dayAndYearRollover() {
+        assertEquals(t("2026-02-28T23:59:55.100Z"), AisTimestamp.resolve(t("2026-03-01T00:00:00.100Z"), 55));
+        assertEquals(t("2026-12-31T23:59:58.000Z"), AisTimestamp.resolve(t("2027-01-01T00:00:02.000Z"), 58));
+    }
+    
+    
+    @Test
+    public void aheadIntoNextMinute() {
+        /* Clock slightly behind: The report is from the start of the next minute, hour and day */
+        assertEquals(t("2026-03-01T13:00:00.000Z"), AisTimestamp.resolve(t("2026-03-01T12:59:58.000Z"), 0));
+        assertEquals(t("2026-03-02T00:00:01.000Z"), AisTimestamp.resolve(t("2026-03-01T23:59:59.000Z"), 1));
+        /* But not more than MAX_AHEAD */
+        assertEquals(t("2026-03-01T12:59:02.000Z"), AisTimestamp.resolve(t("2026-03-01T12:59:58.000Z"), 2));
+    }
+    
+    
+    @Test
+    public void specialSeconds() {
+        long now = t("2026-03-01T12:30:45.250Z");
+        /* Not available, manual input, dead reckoning, positioning system inoperative */
+        for (int zsec = 60; zsec <= 63; zsec++)
+            assertEquals(now, AisTimestamp.resolve(now, zsec));
+        assertEquals(now, AisTimestamp.resolve(now, -1));
+    }
+    
+    
+    @Test
+    public void neverBeyondLimit() {
+        long now = t("2026-03-01T23:59:58.700Z");
+        for (int zsec = 0; zsec < 60; zsec++) {
+            long r = AisTimestamp.resolve(now, zsec);
+            assertTrue(r <= now + AisTimestamp.MAX_AHEAD, "second "+zsec);
+            assertTrue(r > now + AisTimestamp.MAX_AHEAD - 60000, "second "+zsec);
+            assertEquals(zsec, (int) ((r / 1000) % 60));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import no.polaric.core.*;
+import no.polaric.aprsd.*;
+import no.polaric.aprsd.point.*;
+
+
+/**
+ * In-memory stand-in for the server config and the point DB, so that channels 
+ * and the ingest path can be tested and benchmarked without a running server. 
+ * Config properties are kept in a Properties object. The point DB is a map 
+ * keyed by ident. Methods that are not needed return default values. 
+ * Shared with the benchmarks through the test jar.
+ */
+
+public class StubConfig
+{
+    private final Properties _props = new Properties();
+    private final Map<String, TrackerPoint> _items = new ConcurrentHashMap<String, TrackerPoint>();
+    private final AprsServerConfig _conf;
+    private final StationDB _db;
+
+
+    public StubConfig() {
+        _props.setProperty("logdir", System.getProperty("java.io.tmpdir"));
+        _db = (StationDB) Proxy.newProxyInstance(StationDB.class.getClassLoader(),
+            new Class<?>[] {StationDB.class}, this::dbCall);
+        _conf = (AprsServerConfig) Proxy.newProxyInstance(AprsServerConfig.class.getClassLoader(),
+            new Class<?>[] {AprsServerConfig.class}, this::confCall);
+        if (AisPlugin.log == null)
+            AisPlugin.log = new Logfile(_conf, "aistest", "aistest.log");
+    }
+
+
+    public AprsServerConfig conf()
+       { return _conf; }
+
+    public Properties props()
+       { return _props; }
+
+    public Map<String, TrackerPoint> items()
+       { return _items; }
+
+
+    /** Remove all vessels from the DB and from the plugin's indexes. */
+    public void clear() {
+        _items.clear();
+        AisPlugin.index.clear();
+        AisPlugin.grid.clear();
+        if (AisPlugin.store != null)
+            AisPlugin.store.clear();
+    }
+
+
+
+    private Object confCall(Object proxy, Method m, Object[] args) {
+        String name = m.getName();
+        if (name.equals("getDB"))
+            return _db;
+        if (name.equals("config"))
+            return _props;
+        if (name.equals("log"))
+            return AisPlugin.log;
+        if (name.equals("getProperty") && args.length == 2)
+            return _props.getProperty((String) args[0], (String) args[1]);
+        if (name.equals("getIntProperty") && args.length == 2) {
+            String v = _props.getProperty((String) args[0]);
+            return (v == null ? args[1] : Integer.valueOf(v.trim()));
+        }
+        if (name.equals("getBoolProperty") && args.length == 2) {
+            String v = _props.getProperty((String) args[0]);
+            return (v == null ? args[1] : Boolean.valueOf(v.trim()));
+        }
+        return _default(proxy, m, args);
+    }
+
+
+
+    private Object dbCall(Object proxy, Method m, Object[] args) {
+        String name = m.getName();
+        if (name.equals("getItem"))
+            return _items.get((String) args[0]);
+        if (name.equals("addItem")) {
+            TrackerPoint p = (TrackerPoint) args[0];
+            _items.put(p.getIdent(), p);
+            return null;
+        }
+        if (name.equals("removeItem") && args[0] instanceof String)
+            return _items.remove((String) args[0]);
+        return _default(proxy, m, args);
+    }
+
+
+
+    private static Object _default(Object proxy, Method m, Object[] args) {
+        if (m.getName().equals("toString"))
+            return "StubConfig";
+        if (m.getName().equals("hashCode"))
+            return System.identityHashCode(proxy);
+        if (m.getName().equals("equals"))
+            return proxy == args[0];
+        Class<?> t = m.getReturnType();
+        if (t == boolean.class)
+            return false;
+        if (t == int.class)
+            return 0;
+        if (t == long.class)
+            return 0L;
+        if (t == double.class)
+            return 0.0;
+        if (t == float.class)
+            return 0.0f;
+        if (t == short.class)
+            return (short) 0;
+        if (t == byte.class)
+            return (byte) 0;
+        if (t == char.class)
+            return (char) 0;
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 by LA7ECA, Øyvind Hanssen (ohanssen@acm.org)
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+
+package no.polaric.ais;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import no.polaric.aprsd.*;
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Fragment counters of the UDP channel. Sentences are sent as datagrams to
+ * the channel on the loopback interface. The config is a StubConfig.
+ */
+
+public class UdpAisChannelTest
+{
+    private final StubConfig _cfg = new StubConfig();
+    private final Properties _props = _cfg.props();
+    private UdpAisChannel _chan;
+    private int _port;
+
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        try (DatagramSocket s = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            _port = s.getLocalPort();
+        }
+        AprsServerConfig conf = _cfg.conf();
+        _chan = new UdpAisChannel(conf, "udp");
+        _props.setProperty("channel."+_chan.getIdent()+".port", ""+_port);
+        _props.setProperty("channel."+_chan.getIdent()+".bind", "127.0.0.1");
+        _chan.activate(conf);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        _chan.deActivate();
+    }
+
+
+    /** A two-part message with an id that is not used is skipped, not lost. */
+    @Test
+    public void filteredMultipart() throws Exception {
+        String data = "8" + "0".repeat(59);
+        _send(_nmea("AIVDM,2,1,3,A," + data.substring(0, 40) + ",0") + "\r\n"
+            + _nmea("AIVDM,2,2,3,A," + data.substring(40) + ",2"));
+        var cnf = _await(c -> c.skipped >= 1);
+        assertEquals(1, cnf.skipped);
+        assertEquals(0, cnf.orphaned);
+        assertEquals(0, cnf.lostFragments);
+    }
+
+
+    /** A fragment without the first part of its message counts as lost. */
+    @Test
+    public void orphanedFragment() throws Exception {
+        _send(_nmea("AIVDM,2,2,4,A,0000000000,2"));
+        var cnf = _await(c -> c.lostFragments >= 1);
+        assertEquals(1, cnf.orphaned);
+        assertEquals(1, cnf.lostFragments);
+    }
+
+
+
+    /* Add start character and checksum to a sentence */
+    private static String _nmea(String body) {
+        int sum = 0;
+        for (int i = 0; i < body.length(); i++)
+            sum ^= body.charAt(i);
+        return String.format("!%s*%02X", body, sum);
+    }
+
+
+    private void _send(String text) throws Exception {
+        byte[] b = text.getBytes(StandardCharsets.US_ASCII);
+        try (DatagramSocket s = new DatagramSocket()) {
+            s.send(new DatagramPacket(b, b.length, InetAddress.getLoopbackAddress(), _port));
+        }
+    }
+
+
+    /* Wait until the counters satisfy cond, or at most 2 s */
+    private UdpAisChannel.JsConfig _await(java.util.function.Predicate<UdpAisChannel.JsConfig> cond)
+          throws InterruptedException {
+        long end = System.currentTimeMillis() + 2000;
+        UdpAisChannel.JsConfig cnf = _chan.getJsConfig();
+        while (!cond.test(cnf) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+            cnf = _chan.getJsConfig();
+        }
+        return cnf;
+    }
+}